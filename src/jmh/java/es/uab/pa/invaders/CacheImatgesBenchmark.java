@@ -0,0 +1,102 @@
+/*
+ * @(#)CacheImatgesBenchmark.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uab.pa.invaders.worldview.World;
+
+/**
+ * Benchmarks de <code>CacheImatges.getAtlas</code>, tant quan l'atles ja
+ * és a la cache com quan s'ha de generar, i del dibuix d'un sprite
+ * des de l'atles.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CacheImatgesBenchmark {
+  
+  @Param({"Invasor", "Jugador", "Tret"})
+  public String nom;
+  
+  private CacheImatges cache;
+  
+  private int id;
+  
+  private Graphics desti;
+  
+  @Setup
+  public void prepara() {
+    final World mon = new World();
+    mon.setYInverted(true);
+    mon.setDimensionView(Finestra.WIDTH, Finestra.HEIGHT, 0, 0);
+    mon.setDimensionWorld(Joc.WIDTH, Joc.HEIGHT, 0, 0);
+    this.cache = new CacheImatges(mon);
+    this.cache.getAtlas();
+    this.id = CacheImatges.getId(this.nom);
+    this.desti = new BufferedImage(Finestra.WIDTH, Finestra.HEIGHT, BufferedImage.TYPE_INT_RGB).getGraphics();
+  }
+  
+  @Benchmark
+  public AtlasSprites encert() {
+    return this.cache.getAtlas();
+  }
+  
+  @Benchmark
+  public AtlasSprites fallada() {
+    this.cache.esborra();
+    return this.cache.getAtlas();
+  }
+  
+  @Benchmark
+  public void dibuixa() {
+    this.cache.getAtlas().dibuixa(this.desti, this.id, 100, 100);
+  }
+  
+}
@@ -0,0 +1,164 @@
+/*
+ * @(#)ColisioBenchmark.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks de cada tipus de parella de <code>hasColisio</code>. Abans
+ * de cada comprovació es tornen a escriure les posicions dels actors al
+ * magatzem, de manera que cada prova les llegeix i calcula la intersecció
+ * de les formes (o de les màscares, a les variants <code>*Mascara</code>)
+ * de nou, com passaria en un pas real.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColisioBenchmark {
+  
+  /**
+   * Si els actors de cada parella se solapen o no.
+   */
+  @Param({"true", "false"})
+  public boolean solapats;
+  
+  private Joc joc;
+  private Invasor invasor;
+  private Jugador jugador;
+  private Tret tretJugador;
+  private Tret tretInvasor;
+  
+  /**
+   * Posicions dels actors: tots al voltant del mateix punt si se
+   * solapen, o separats però prou a prop per passar la primera fase.
+   */
+  private double ix, iy, jx, jy, tjx, tjy, tix, tiy;
+  
+  @Setup
+  public void prepara() {
+    final Joc joc = new Joc();
+    joc.setColisionsPerMascara(true);
+    this.joc = joc;
+    this.invasor     = new Invasor(joc, 0);
+    this.jugador     = new Jugador(joc);
+    this.tretJugador = new Tret(joc, Tret.TRET_JUGADOR);
+    this.tretInvasor = new Tret(joc, Tret.TRET_INVASOR);
+    
+    ix = 500; iy = 500;
+    if (solapats) {
+      jx  = 505; jy  = 520;
+      tjx = 520; tjy = 515;
+      tix = 518; tiy = 530;
+    } else {
+      jx  = 541; jy  = 540;
+      tjx = 500; tjy = 500;
+      tix = 530; tiy = 570;
+    }
+  }
+  
+  private void recolloca() {
+    invasor.setPosicio(ix, iy);
+    jugador.setPosicio(jx, jy);
+    tretJugador.setPosicio(tjx, tjy);
+    tretInvasor.setPosicio(tix, tiy);
+  }
+  
+  @Benchmark
+  public boolean invasorJugador() {
+    recolloca();
+    return invasor.hasColisio(jugador);
+  }
+  
+  @Benchmark
+  public boolean jugadorInvasor() {
+    recolloca();
+    return jugador.hasColisio(invasor);
+  }
+  
+  @Benchmark
+  public boolean invasorTret() {
+    recolloca();
+    return invasor.hasColisio(tretJugador);
+  }
+  
+  @Benchmark
+  public boolean tretInvasor() {
+    recolloca();
+    return tretJugador.hasColisio(invasor);
+  }
+  
+  @Benchmark
+  public boolean jugadorTret() {
+    recolloca();
+    return jugador.hasColisio(tretInvasor);
+  }
+  
+  @Benchmark
+  public boolean tretJugador() {
+    recolloca();
+    return tretInvasor.hasColisio(jugador);
+  }
+  
+  @Benchmark
+  public boolean tretTret() {
+    recolloca();
+    return tretJugador.hasColisio(tretInvasor);
+  }
+  
+  @Benchmark
+  public boolean invasorJugadorMascara() {
+    recolloca();
+    return joc.hasColisio(invasor, jugador);
+  }
+  
+  @Benchmark
+  public boolean tretInvasorMascara() {
+    recolloca();
+    return joc.hasColisio(tretJugador, invasor);
+  }
+  
+}
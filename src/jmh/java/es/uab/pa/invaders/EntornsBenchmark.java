@@ -0,0 +1,113 @@
+/*
+ * @(#)EntornsBenchmark.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark d'un pas de tots els jocs d'un <code>Entorns</code>, en
+ * sèrie i en paral·lel, amb accions a l'atzar. Cada mesura és el temps
+ * d'un lot de <code>PASSOS</code> passos des de jocs acabats de crear
+ * (amb la mateixa llavor), així que sempre es mesura la mateixa
+ * seqüència d'estats.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = EntornsBenchmark.PASSOS_ESCALFAMENT)
+@Measurement(iterations = 20, batchSize = EntornsBenchmark.PASSOS)
+@Fork(1)
+public class EntornsBenchmark {
+  
+  /**
+   * Nombre de passos de cada lot mesurat.
+   */
+  static final int PASSOS = 100;
+  
+  /**
+   * Nombre de passos de cada lot d'escalfament, prou llarg perquè el
+   * compilador JIT optimitzi el codi abans de mesurar.
+   */
+  static final int PASSOS_ESCALFAMENT = 1000;
+  
+  @Param({"1", "64", "1024"})
+  public int jocs;
+  
+  @Param({"0", "16"})
+  public int llindarParallel;
+  
+  @Param({"42"})
+  public long llavor;
+  
+  private Entorns entorns;
+  private byte[] accions;
+  private ByteBuffer recompenses, acabats, observacions;
+  
+  @Setup(Level.Iteration)
+  public void prepara() {
+    Entorns.LLINDAR_PARALLEL = this.llindarParallel;
+    this.entorns = new Entorns(this.jocs, this.llavor);
+    this.accions = new byte[this.jocs];
+    final Random r = new Random(this.llavor);
+    for (int i=0; i<this.jocs; i++) {
+      this.accions[i] = (byte)r.nextInt(8);
+    }
+    this.recompenses = ByteBuffer.allocateDirect(this.jocs * 4).order(ByteOrder.nativeOrder());
+    this.acabats = ByteBuffer.allocateDirect(this.jocs);
+    this.observacions = ByteBuffer.allocateDirect(this.jocs * this.entorns.getMidaObservacio() * 4)
+        .order(ByteOrder.nativeOrder());
+    this.entorns.reinicia(this.observacions);
+  }
+  
+  @Benchmark
+  public ByteBuffer pas() {
+    this.entorns.pas(this.accions, this.recompenses, this.acabats, this.observacions);
+    return this.observacions;
+  }
+  
+}
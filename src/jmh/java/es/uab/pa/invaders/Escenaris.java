@@ -0,0 +1,122 @@
+/*
+ * @(#)Escenaris.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+/**
+ * Generador d'escenaris reproduïbles per als benchmarks. Amb la mateixa
+ * llavor i nombre d'actors sempre es genera el mateix escenari.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Escenaris {
+  
+  /**
+   * Proporció d'invasors sobre el total d'actors (la resta són trets).
+   */
+  public static double PROPORCIO_INVASORS = 0.6;
+  
+  /**
+   * Crea un joc sense renderitzador amb un jugador i
+   * <code>nActors - 1</code> invasors i trets repartits a l'atzar.
+   * 
+   * @param llavor Llavor del generador aleatori (i del joc).
+   * @param nActors Nombre total d'actors.
+   * @param midaCella Mida de les cel·les de la graella de col·lisions.
+   * @return joc amb l'escenari generat.
+   */
+  public static Joc crea(long llavor, int nActors, double midaCella) {
+    final Random r = new Random(llavor);
+    final Joc joc = new Joc(llavor);
+    joc.setMidaCella(midaCella);
+    
+    final Jugador jugador = new Jugador(joc);
+    jugador.setPosicio(Joc.WIDTH/2 - Jugador.WIDTH/2, Joc.HEIGHT - Jugador.HEIGHT);
+    joc.afegirActor(jugador);
+    
+    for (int i=1; i<nActors; i++) {
+      if (r.nextDouble() < PROPORCIO_INVASORS) {
+        final Invasor inv = new Invasor(joc, Invasor.WIDTH*2);
+        inv.setPosicio(r.nextDouble() * (Joc.WIDTH - Invasor.WIDTH),
+                       r.nextDouble() * (Joc.HEIGHT - Invasor.HEIGHT*3));
+        inv.setVelocity(1, 0.08);
+        joc.afegirActor(inv);
+      } else {
+        final boolean deJugador = r.nextBoolean();
+        final Tret t = new Tret(joc, deJugador ? Tret.TRET_JUGADOR : Tret.TRET_INVASOR);
+        t.setPosicio(r.nextDouble() * (Joc.WIDTH - Tret.WIDTH),
+                     1 + r.nextDouble() * (Joc.HEIGHT - Tret.HEIGHT - 2));
+        t.setVelocity(0, deJugador ? -2.5 : 1 + r.nextDouble());
+        joc.afegirActor(t);
+      }
+    }
+    return joc;
+  }
+  
+  /**
+   * Còpia en memòria de l'estat d'un joc, per tornar-lo a deixar igual
+   * abans de cada invocació d'un benchmark que el modifica.
+   */
+  public static final class Copia {
+    
+    private final Instantanies instantanies;
+    private final byte[] dades;
+    
+    /**
+     * Desa l'estat actual del joc donat.
+     * 
+     * @param joc Joc a copiar.
+     * @throws IOException si no es pot desar.
+     */
+    public Copia(Joc joc) throws IOException {
+      this.instantanies = new Instantanies(joc);
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      this.instantanies.desaCompleta(Channels.newChannel(out));
+      this.dades = out.toByteArray();
+    }
+    
+    /**
+     * Torna el joc a l'estat desat, reaprofitant-ne els actors i els
+     * buffers interns.
+     * 
+     * @throws IOException si no es pot restaurar.
+     */
+    public void restaura() throws IOException {
+      this.instantanies.aplica(Channels.newChannel(new ByteArrayInputStream(this.dades)));
+    }
+    
+  }
+  
+}
@@ -0,0 +1,158 @@
+/*
+ * @(#)GeometriaBenchmark.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.awt.Point;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uab.pa.invaders.worldview.WPoint;
+import es.uab.pa.invaders.worldview.WRectangle;
+import es.uab.pa.invaders.worldview.World;
+
+/**
+ * Benchmarks de les funcions auxiliars de <code>worldview</code> que es
+ * fan servir a cada pas: intersecció de rectangles i conversió
+ * món-pantalla.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometriaBenchmark {
+  
+  /**
+   * Nombre de rectangles/punts sobre els que es va ciclant.
+   */
+  private static final int N = 1024;
+  
+  @Param({"42"})
+  public long llavor;
+  
+  private WRectangle[] rectangles;
+  private WPoint[] punts;
+  private World mon;
+  private int i;
+  private double[] xs, ys;
+  private int[] vx, vy;
+  
+  @Setup
+  public void prepara() {
+    final Random r = new Random(llavor);
+    this.rectangles = new WRectangle[N];
+    this.punts = new WPoint[N];
+    for (int k=0; k<N; k++) {
+      this.rectangles[k] = new WRectangle(r.nextDouble()*Joc.WIDTH, r.nextDouble()*Joc.HEIGHT,
+          Invasor.WIDTH, Invasor.HEIGHT);
+      this.punts[k] = new WPoint(r.nextDouble()*Joc.WIDTH, r.nextDouble()*Joc.HEIGHT);
+    }
+    
+    this.mon = new World();
+    this.mon.setYInverted(true);
+    this.mon.setDimensionView(Finestra.WIDTH, Finestra.HEIGHT, 0, 0);
+    this.mon.setDimensionWorld(Joc.WIDTH, Joc.HEIGHT, 0, 0);
+    
+    this.xs = new double[N];
+    this.ys = new double[N];
+    this.vx = new int[N];
+    this.vy = new int[N];
+    for (int k=0; k<N; k++) {
+      this.xs[k] = this.punts[k].x;
+      this.ys[k] = this.punts[k].y;
+    }
+  }
+  
+  private int seguent() {
+    this.i = (this.i + 1) & (N-1);
+    return this.i;
+  }
+  
+  @Benchmark
+  public boolean intersects() {
+    final int k = seguent();
+    return this.rectangles[k].intersects(this.rectangles[(k*7) & (N-1)]);
+  }
+  
+  @Benchmark
+  public boolean contains() {
+    final int k = seguent();
+    return this.rectangles[k].contains(this.punts[k]);
+  }
+  
+  @Benchmark
+  public boolean intersectsDouble() {
+    final int k = seguent();
+    final WRectangle r = this.rectangles[(k*7) & (N-1)];
+    return this.rectangles[k].intersects(r.getX(), r.getY(), r.getAmp(), r.getAl());
+  }
+  
+  @Benchmark
+  public boolean containsDouble() {
+    final int k = seguent();
+    return this.rectangles[k].contains(this.punts[k].x, this.punts[k].y);
+  }
+  
+  @Benchmark
+  public double distanceSq() {
+    final int k = seguent();
+    return this.punts[k].distanceSq(this.punts[(k*7) & (N-1)]);
+  }
+  
+  @Benchmark
+  public Point worldToView() {
+    return this.mon.worldToView(this.punts[seguent()]);
+  }
+  
+  /**
+   * Converteix els N punts de cop (el temps és per crida, no per punt).
+   */
+  @Benchmark
+  public int[] worldToViewLot() {
+    this.mon.worldToView(this.xs, this.ys, this.vx, this.vy, N);
+    return this.vx;
+  }
+  
+}
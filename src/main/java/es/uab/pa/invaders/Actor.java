@@ -29,9 +29,6 @@
 
 package es.uab.pa.invaders;
 
-
-import java.awt.geom.Area;
-
 import es.uab.pa.invaders.worldview.WPoint;
 import es.uab.pa.invaders.worldview.WRectangle;
 
@@ -39,19 +36,38 @@ import es.uab.pa.invaders.worldview.WRectangle;
  * Classe base que representa un "actor", és a dir, qualsevol
  * objecte que intervé en el joc.
  * 
+ * L'estat de l'actor (posició, velocitat, mida, capa...) es guarda al
+ * <code>ActorStore</code> del joc; l'objecte només n'és una vista, i
+ * deixa de ser vàlid quan l'actor surt del joc.
+ * 
  * @author Marc Pujol <marc@la3.org>
  */
 public abstract class Actor {
   
   /**
-   * Posició actual de l'objecte.
+   * Capa de col·lisió del jugador.
+   */
+  public static final int CAPA_JUGADOR = 1 << 0;
+  
+  /**
+   * Capa de col·lisió dels trets del jugador.
    */
-  protected WPoint posicio;
+  public static final int CAPA_TRET_JUGADOR = 1 << 1;
   
   /**
-   * Velocitat.
+   * Capa de col·lisió dels invasors.
    */
-  protected WPoint velocity;
+  public static final int CAPA_INVASOR = 1 << 2;
+  
+  /**
+   * Capa de col·lisió dels trets dels invasors.
+   */
+  public static final int CAPA_TRET_INVASOR = 1 << 3;
+  
+  /**
+   * Nombre de capes de col·lisió diferents.
+   */
+  public static final int NOMBRE_CAPES = 4;
   
   /**
    * Joc al que pertany aquest actor.
@@ -59,34 +75,45 @@ public abstract class Actor {
   protected Joc joc;
   
   /**
-   * Indica si un element ha estat marcat per esborrar,
-   * es a dir, ha de desaparèixer del joc.
+   * Magatzem on es guarda l'estat d'aquest actor.
    */
-  private boolean perEsborrar;
+  protected final ActorStore store;
   
   /**
-   * Àrea ocupada per aquest actor.
+   * Posició d'aquest actor dins el magatzem, o -1 si ja no és al joc.
    */
-  private Area area;
+  int index = -1;
   
   /**
-   * Crea un nou actor per al joc indicat.
+   * Nombre de vegades que aquesta vista s'ha reaprofitat per a un actor
+   * nou (veure <code>reinicia</code>). Es pot llegir des de qualsevol
+   * fil per saber si la vista encara representa el mateix actor.
+   */
+  volatile int generacio;
+  
+  /**
+   * Crea un nou actor per al joc indicat, i l'afegeix al magatzem
+   * d'actors del joc (a la posició (0,0) i aturat).
    * 
-   * @param joc
+   * @param joc Joc al que pertany el nou actor.
+   * @param tipus Tipus d'actor (veure <code>ActorStore</code>).
+   * @param amplada Amplada de l'actor en dimensions món.
+   * @param alcada Alçada de l'actor en dimensions món.
+   * @param capa Capa de col·lisió de l'actor.
+   * @param mascara Màscara de capes amb les que pot col·lisionar.
    */
-  public Actor(Joc joc) {
+  protected Actor(Joc joc, byte tipus, double amplada, double alcada, int capa, int mascara) {
     this.joc = joc;
-    this.posicio = new WPoint(0,0);
-    this.velocity = new WPoint(0,0);
+    this.store = joc.getStore();
+    this.store.afegeix(this, tipus, amplada, alcada, capa, mascara);
   }
   
   /**
-   * Avança "un pas" l'objecte en qüestió.
+   * Avança "un pas" l'objecte en qüestió. El joc mou tots els actors
+   * alhora amb <code>ActorStore.mou</code>.
    */
   public void moure() {
-    this.posicio.x = interval(0, this.posicio.x+this.velocity.x, Joc.WIDTH-this.getWidth());
-    this.posicio.y = interval(0, this.posicio.y+this.velocity.y, Joc.HEIGHT);
-    this.area = null;
+    this.store.mou(this.joc, this.index);
   }
   
   /**
@@ -95,44 +122,125 @@ public abstract class Actor {
    */
   public abstract String getNomImatge();
   
+  /**
+   * Retorna l'identificador numèric de l'sprite que representa aquest
+   * objecte, que és el seu tipus dins d'<code>ActorStore</code>.
+   */
+  public final int getIdSprite() {
+    return this.store.tipus[this.index];
+  }
+  
   public abstract int getWidth();
   public abstract int getHeight();
+  
+  /**
+   * Indica si aquest actor encara és al joc.
+   * 
+   * @return <code>true</code> si l'actor és al magatzem del joc.
+   */
+  public boolean isEnJoc() {
+    return this.index >= 0;
+  }
+  
+  /**
+   * Obtenir la coordenada "x" de la posició d'aquest actor.
+   * 
+   * @return coordenada "x" de la posició actual.
+   */
+  public double getX() {
+    return this.store.x[this.index];
+  }
+  
+  /**
+   * Obtenir la coordenada "y" de la posició d'aquest actor.
+   * 
+   * @return coordenada "y" de la posició actual.
+   */
+  public double getY() {
+    return this.store.y[this.index];
+  }
 
   /**
    * Obtenir la posició d'aquest actor dins el món.
    * 
-   * @return posició actual d'aquest actor dins el món.
+   * @return còpia de la posició actual d'aquest actor dins el món.
    */
   public WPoint getPosicio() {
-    return posicio;
+    return new WPoint(this.store.x[this.index], this.store.y[this.index]);
   }
 
   /**
    * Obtenir la velocitat d'aquest actor.
    * 
-   * @return velocitat actual d'aquest actor.
+   * @return còpia de la velocitat actual d'aquest actor.
    */
   public WPoint getVelocity() {
-    return velocity;
+    return new WPoint(this.store.vx[this.index], this.store.vy[this.index]);
   }
 
   /**
-   * Canvia la posició d'aquest actor.
+   * Obtenir la coordenada "x" d'aquest actor interpolada entre la
+   * posició anterior i l'actual.
+   * 
+   * @param alfa Fracció (entre 0 i 1) de pas a interpolar.
+   * @return coordenada "x" interpolada.
+   */
+  public double getXInterpolada(double alfa) {
+    final double xa = this.store.xAnterior[this.index];
+    return xa + (this.store.x[this.index] - xa) * alfa;
+  }
+  
+  /**
+   * Obtenir la coordenada "y" d'aquest actor interpolada entre la
+   * posició anterior i l'actual.
+   * 
+   * @param alfa Fracció (entre 0 i 1) de pas a interpolar.
+   * @return coordenada "y" interpolada.
+   */
+  public double getYInterpolada(double alfa) {
+    final double ya = this.store.yAnterior[this.index];
+    return ya + (this.store.y[this.index] - ya) * alfa;
+  }
+  
+  /**
+   * Obtenir la coordenada "x" d'aquest actor abans del darrer pas.
+   * 
+   * @return coordenada "x" anterior.
+   */
+  public double getXAnterior() {
+    return this.store.xAnterior[this.index];
+  }
+  
+  /**
+   * Obtenir la coordenada "y" d'aquest actor abans del darrer pas.
+   * 
+   * @return coordenada "y" anterior.
+   */
+  public double getYAnterior() {
+    return this.store.yAnterior[this.index];
+  }
+
+  /**
+   * Canvia la posició d'aquest actor. L'actor hi "salta" directament,
+   * sense interpolar des de la posició anterior.
    * 
    * @param posicio Nova posició d'aquest actor.
    */
   public void setPosicio(WPoint posicio) {
-    this.posicio = posicio;
+    this.setPosicio(posicio.x, posicio.y);
   }
   
   /**
-   * Canvia la posició d'aquest actor.
+   * Canvia la posició d'aquest actor. L'actor hi "salta" directament,
+   * sense interpolar des de la posició anterior.
    * 
    * @param x Coordenada "x" de la nova posició d'aquest actor.
    * @param y Coordenada "y" de la nova posició d'aquest actor.
    */
   public void setPosicio(double x, double y) {
-    this.posicio = new WPoint(x,y);
+    final int i = this.index;
+    this.store.x[i] = this.store.xAnterior[i] = x;
+    this.store.y[i] = this.store.yAnterior[i] = y;
   }
 
   /**
@@ -141,7 +249,7 @@ public abstract class Actor {
    * @param velocity Nova velocitat d'aquest actor.
    */
   public void setVelocity(WPoint velocity) {
-    this.velocity = velocity;
+    this.setVelocity(velocity.x, velocity.y);
   }
   
   /**
@@ -151,21 +259,33 @@ public abstract class Actor {
    * @param y Coordenada "y" de la nova velocitat d'aquest actor.
    */
   public void setVelocity(double x, double y) {
-    this.velocity = new WPoint(x,y);
+    this.store.vx[this.index] = x;
+    this.store.vy[this.index] = y;
   }
   
   /**
-   * Força un valor a trobar-se dins l'interval determinat per
-   * min i max (ambdós inclosos).
+   * Torna a posar al joc un actor que n'havia sortit, al final del
+   * magatzem i a la posició i velocitat donades (ús intern).
    * 
-   * @param min Mínim valor a retornar.
-   * @param value Valor a retornar si es troba dins l'interval.
-   * @return max Màxim valor a retornar.
-   */
-  private static double interval(double min, double value, double max) {
-    if (value < min) return min;
-    if (value > max) return max;
-    return value;
+   * @param tipus Tipus d'actor.
+   * @param capa Capa de col·lisió de l'actor.
+   * @param mascara Màscara de capes amb les que pot col·lisionar.
+   * @param x Coordenada "x" de la nova posició.
+   * @param y Coordenada "y" de la nova posició.
+   * @param vx Component "x" de la nova velocitat.
+   * @param vy Component "y" de la nova velocitat.
+   */
+  protected void reinicia(byte tipus, int capa, int mascara, double x, double y, double vx, double vy) {
+    this.generacio++;
+    if (this.index < 0) {
+      this.store.afegeix(this, tipus, this.getWidth(), this.getHeight(), capa, mascara);
+    } else {
+      this.store.capa[this.index] = capa;
+      this.store.mascara[this.index] = mascara;
+      this.store.indicadors[this.index] = 0;
+    }
+    this.setPosicio(x, y);
+    this.setVelocity(vx, vy);
   }
 
   /**
@@ -174,7 +294,7 @@ public abstract class Actor {
    * @return <code>True</code> si està marcat per esborrar, <code>False</code> sinó.
    */
   public boolean isPerEsborrar() {
-    return perEsborrar;
+    return (this.store.indicadors[this.index] & ActorStore.PER_ESBORRAR) != 0;
   }
 
   /**
@@ -183,33 +303,62 @@ public abstract class Actor {
    * param <code>True</code> si s'ha de marcar per esborrar, <code>False</code> sinó.
    */
   public void setPerEsborrar(boolean perEsborrar) {
-    this.perEsborrar = perEsborrar;
+    if (perEsborrar) {
+      this.store.indicadors[this.index] |= ActorStore.PER_ESBORRAR;
+    } else {
+      this.store.indicadors[this.index] &= ~ActorStore.PER_ESBORRAR;
+    }
   }
   
   /**
    * Retorna el rectangle que compren aquest actor.
    */
   public WRectangle getBox() {
-    return new WRectangle(this.posicio.x, this.posicio.y, this.getWidth(), this.getHeight());
+    return new WRectangle(this.getX(), this.getY(), this.getWidth(), this.getHeight());
+  }
+
+  /**
+   * Omple el rectangle donat amb la caixa on es troba aquest actor, sense
+   * crear-ne cap de nou.
+   *
+   * @param caixa rectangle on es guarda el resultat.
+   * @return el mateix rectangle <code>caixa</code>.
+   */
+  public WRectangle getBox(WRectangle caixa) {
+    return caixa.set(this.getX(), this.getY(), this.getWidth(), this.getHeight());
   }
   
   /**
-   * Retorna l'àrea que ocupa aquest actor (ús intern).
+   * Retorna la capa de col·lisió d'aquest actor (una de les
+   * constants <code>CAPA_*</code>).
    * 
-   * @return area que ocupa aquest actor.
+   * @return capa de col·lisió d'aquest actor.
    */
-  protected abstract Area getCurrentArea();
+  public final int getCapa() {
+    return this.store.capa[this.index];
+  }
   
   /**
-   * Retorna l'àrea que ocupa aquest actor (ús extern).
+   * Retorna la màscara de capes amb les que pot col·lisionar aquest
+   * actor. Les màscares han de ser simètriques: si A pot xocar amb
+   * la capa de B, B també ha de poder xocar amb la capa de A.
    * 
-   * @return area que ocupa aquest actor.
+   * @return màscara de capes amb les que pot col·lisionar.
    */
-  public final Area getArea() {
-    if (this.area == null) {
-      this.area = this.getCurrentArea();
-    }
-    return this.area;
+  public final int getMascara() {
+    return this.store.mascara[this.index];
+  }
+  
+  /**
+   * Indica si aquest actor pot arribar a col·lisionar amb l'actor
+   * donat, segons les seves capes i màscares.
+   * 
+   * @param a Actor amb el que s'ha de realitzar la comprovació.
+   * @return <code>true</code> si les capes són compatibles,
+   * <code>false</code> sinó.
+   */
+  public final boolean potColisionar(Actor a) {
+    return (this.getMascara() & a.getCapa()) != 0;
   }
   
   /**
@@ -222,13 +371,17 @@ public abstract class Actor {
   /**
    * Delega la detecció de col·lisions al mètode apropiat
    * segons el tipus d'actor amb el que hem de comprovar si
-   * s'ha produït una col·lisió.
+   * s'ha produït una col·lisió. Els actors de capes incompatibles
+   * mai col·lisionen.
    * 
    * @param a Actor amb el que s'ha de realitzar la comprovació.
    * @return <code>true</code> si s'ha produït una col·lisió amb
    * aquest actor, <code>false</code> sinó.
    */
   public final boolean hasColisio(Actor a) {
+    if (!this.potColisionar(a)) {
+      return false;
+    }
     if (a instanceof Tret) {
       return this.hasColisio((Tret)a);
     }
@@ -241,6 +394,32 @@ public abstract class Actor {
     return false;
   }
   
+  /**
+   * Calcula en quin moment del darrer pas s'ha produït la col·lisió amb
+   * l'actor donat, tenint en compte tot el recorregut dels trets (i no
+   * només la seva posició final), de manera que els trets ràpids no
+   * travessin els altres actors sense tocar-los.
+   * 
+   * Les parelles sense cap tret es comproven només a la posició final,
+   * i si col·lisionen ho fan a l'instant 1.
+   * 
+   * @param a Actor amb el que s'ha de realitzar la comprovació.
+   * @return fracció del pas (entre 0 i 1) en què s'ha produït la
+   * col·lisió, o <code>Formes.SENSE_IMPACTE</code> si no n'hi ha.
+   */
+  public final double tempsImpacte(Actor a) {
+    if (!this.potColisionar(a)) {
+      return Formes.SENSE_IMPACTE;
+    }
+    if (this instanceof Tret) {
+      return ((Tret)this).tempsImpacteTret(a);
+    }
+    if (a instanceof Tret) {
+      return ((Tret)a).tempsImpacteTret(this);
+    }
+    return this.hasColisio(a) ? 1 : Formes.SENSE_IMPACTE;
+  }
+  
   /**
    * Comprova si s'ha efectuat una col·lisió amb el jugador donat.
    * 
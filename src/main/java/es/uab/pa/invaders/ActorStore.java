@@ -0,0 +1,503 @@
+/*
+ * @(#)ActorStore.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Magatzem amb l'estat de tots els actors d'un joc, organitzat en
+ * vectors paral·lels de tipus primitius (un element per actor) en lloc
+ * d'un objecte per actor. Els objectes <code>Actor</code> només són
+ * vistes sobre una posició d'aquest magatzem.
+ * 
+ * Els moviments, la neteja i la primera fase de les col·lisions
+ * recorren directament aquests vectors. L'ordre dels actors dins el
+ * magatzem és el mateix en què s'han afegit.
+ * 
+ * No és segur entre fils: només l'ha de fer servir el fil del joc. L'única
+ * excepció és <code>mou</code>, que amb molts actors reparteix la feina
+ * entre els fils del joc però no retorna fins que tots han acabat.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class ActorStore {
+  
+  /**
+   * Tipus d'actor: jugador.
+   */
+  public static final byte JUGADOR = 0;
+  
+  /**
+   * Tipus d'actor: invasor.
+   */
+  public static final byte INVASOR = 1;
+  
+  /**
+   * Tipus d'actor: tret (de qualsevol bàndol).
+   */
+  public static final byte TRET = 2;
+  
+  /**
+   * Nombre de tipus d'actor diferents.
+   */
+  public static final int NOMBRE_TIPUS = 3;
+  
+  /**
+   * Indicador d'actor marcat per esborrar.
+   */
+  public static final int PER_ESBORRAR = 1 << 0;
+  
+  /**
+   * Capacitat inicial dels vectors.
+   */
+  private static final int CAPACITAT_INICIAL = 64;
+
+  /**
+   * Nombre d'actors de cada tros en què es divideix el moviment. És fix
+   * (no depèn del nombre de fils) perquè cada tros té la seva seqüència
+   * de números aleatoris, i així el resultat no canvia amb els fils.
+   */
+  public static int MIDA_TROS = 1024;
+  
+  /**
+   * Posició actual de cada actor.
+   */
+  double[] x, y;
+  
+  /**
+   * Posició de cada actor abans de l'últim pas.
+   */
+  double[] xAnterior, yAnterior;
+  
+  /**
+   * Velocitat de cada actor.
+   */
+  double[] vx, vy;
+  
+  /**
+   * Mida de cada actor.
+   */
+  double[] amplada, alcada;
+  
+  /**
+   * Posició "x" inicial i desviació lateral màxima (només invasors).
+   */
+  double[] xInicial, desviacio;
+  
+  /**
+   * Tipus de cada actor (<code>JUGADOR</code>, <code>INVASOR</code> o
+   * <code>TRET</code>).
+   */
+  byte[] tipus;
+  
+  /**
+   * Capa i màscara de col·lisió de cada actor.
+   */
+  int[] capa, mascara;
+  
+  /**
+   * Indicadors de cada actor (<code>PER_ESBORRAR</code>).
+   */
+  int[] indicadors;
+  
+  /**
+   * Identificador de cada actor. Cada actor que entra al magatzem en
+   * rep un de nou, més gran que tots els anteriors, i com que l'ordre
+   * dels actors no canvia mai els identificadors estan sempre ordenats.
+   */
+  int[] id;
+  
+  /**
+   * Identificador que rebrà el següent actor.
+   */
+  int seguentId;
+  
+  /**
+   * Vista (objecte <code>Actor</code>) de cada posició.
+   */
+  Actor[] vistes;
+  
+  /**
+   * Nombre d'actors al magatzem.
+   */
+  int n;
+  
+  /**
+   * Efectes dels moviments, per al moviment en sèrie i per a cada tros
+   * del moviment en paral·lel.
+   */
+  private final EfectesMoviment efectes = new EfectesMoviment();
+  private EfectesMoviment[] efectesTrossos = new EfectesMoviment[0];
+  
+  /**
+   * Generadors aleatoris per al moviment en sèrie i per a cada tros del
+   * moviment en paral·lel.
+   */
+  private final Aleatori aleatori = new Aleatori(0);
+  private Aleatori[] aleatorisTrossos = new Aleatori[0];
+  
+  /**
+   * Crea un magatzem buit.
+   */
+  public ActorStore() {
+    this.x = new double[CAPACITAT_INICIAL];
+    this.y = new double[CAPACITAT_INICIAL];
+    this.xAnterior = new double[CAPACITAT_INICIAL];
+    this.yAnterior = new double[CAPACITAT_INICIAL];
+    this.vx = new double[CAPACITAT_INICIAL];
+    this.vy = new double[CAPACITAT_INICIAL];
+    this.amplada = new double[CAPACITAT_INICIAL];
+    this.alcada = new double[CAPACITAT_INICIAL];
+    this.xInicial = new double[CAPACITAT_INICIAL];
+    this.desviacio = new double[CAPACITAT_INICIAL];
+    this.tipus = new byte[CAPACITAT_INICIAL];
+    this.capa = new int[CAPACITAT_INICIAL];
+    this.mascara = new int[CAPACITAT_INICIAL];
+    this.indicadors = new int[CAPACITAT_INICIAL];
+    this.id = new int[CAPACITAT_INICIAL];
+    this.vistes = new Actor[CAPACITAT_INICIAL];
+  }
+  
+  /**
+   * Retorna el nombre d'actors del magatzem.
+   * 
+   * @return nombre d'actors.
+   */
+  public int size() {
+    return this.n;
+  }
+  
+  /**
+   * Retorna la vista de l'actor i-èssim.
+   * 
+   * @param i Índex de l'actor.
+   * @return vista de l'actor.
+   */
+  public Actor get(int i) {
+    return this.vistes[i];
+  }
+  
+  /**
+   * Afegeix un actor al final del magatzem, a la posició (0,0) i
+   * aturat, i li assigna l'índex corresponent.
+   * 
+   * @param vista Objecte que farà de vista sobre el nou actor.
+   * @param tipus Tipus de l'actor.
+   * @param amplada Amplada de l'actor.
+   * @param alcada Alçada de l'actor.
+   * @param capa Capa de col·lisió de l'actor.
+   * @param mascara Màscara de col·lisió de l'actor.
+   * @return índex del nou actor.
+   */
+  int afegeix(Actor vista, byte tipus, double amplada, double alcada, int capa, int mascara) {
+    if (this.n == this.x.length) {
+      this.creix();
+    }
+    final int i = this.n++;
+    this.x[i] = this.y[i] = 0;
+    this.xAnterior[i] = this.yAnterior[i] = 0;
+    this.vx[i] = this.vy[i] = 0;
+    this.amplada[i] = amplada;
+    this.alcada[i] = alcada;
+    this.xInicial[i] = this.desviacio[i] = 0;
+    this.tipus[i] = tipus;
+    this.capa[i] = capa;
+    this.mascara[i] = mascara;
+    this.indicadors[i] = 0;
+    this.id[i] = this.seguentId++;
+    this.vistes[i] = vista;
+    vista.index = i;
+    return i;
+  }
+  
+  /**
+   * Buida el magatzem, deixant fora de joc totes les vistes. Els trets
+   * es retornen a la reserva donada, com quan s'eliminen durant el joc.
+   * 
+   * @param pool Reserva on retornar els trets, o <code>null</code>.
+   */
+  public void buida(PoolTrets pool) {
+    for (int i=0; i<this.n; i++) {
+      final Actor v = this.vistes[i];
+      v.index = -1;
+      if (pool != null && this.tipus[i] == TRET) {
+        pool.retorna((Tret)v);
+      }
+      this.vistes[i] = null;
+    }
+    this.n = 0;
+  }
+  
+  /**
+   * Avança "un pas" tots els actors: primer s'integren les posicions
+   * i després s'aplica el comportament de cada tipus d'actor. Els
+   * actors que es creïn durant el pas no es mouen fins al següent.
+   * 
+   * Els actors es mouen per trossos de <code>MIDA_TROS</code>, de
+   * l'últim al primer i cadascun de darrere cap endavant, amb una
+   * seqüència aleatòria pròpia (veure <code>Joc.getLlavorTros</code>).
+   * Si hi ha prou actors (veure <code>Joc.setLlindarMovimentParallel</code>)
+   * els trossos es mouen en paral·lel, i els seus efectes s'apliquen
+   * després en el mateix ordre que en sèrie, de manera que el resultat
+   * és idèntic.
+   * 
+   * @param joc Joc al que pertanyen els actors.
+   */
+  public void mou(Joc joc) {
+    final int len = this.n;
+    final int trossos = (len + MIDA_TROS - 1) / MIDA_TROS;
+    final int llindar = joc.getLlindarMovimentParallel();
+    if (llindar > 0 && len >= llindar && trossos > 1) {
+      this.mouParallel(joc, trossos, len);
+      return;
+    }
+    
+    for (int t=trossos-1; t>=0; t--) {
+      this.aleatori.setLlavor(joc.getLlavorTros(t));
+      this.mouTros(this.efectes, this.aleatori, t, len);
+    }
+    this.efectes.aplica(joc);
+  }
+  
+  /**
+   * Avança "un pas" un sol actor.
+   * 
+   * @param joc Joc al que pertany l'actor.
+   * @param i Índex de l'actor.
+   */
+  public void mou(Joc joc, int i) {
+    this.integra(i, Joc.HEIGHT);
+    this.comportament(this.efectes, joc.getAleatori(), i);
+    this.efectes.aplica(joc);
+  }
+  
+  /**
+   * Mou els primers <code>len</code> actors repartint els trossos entre
+   * els fils del joc, guardant els efectes de cada tros a part; després
+   * s'apliquen els efectes de tots els trossos, de l'últim al primer.
+   */
+  private void mouParallel(Joc joc, int trossos, int len) {
+    if (this.efectesTrossos.length < trossos) {
+      final EfectesMoviment[] e = Arrays.copyOf(this.efectesTrossos, trossos);
+      final Aleatori[] a = Arrays.copyOf(this.aleatorisTrossos, trossos);
+      for (int t=this.efectesTrossos.length; t<trossos; t++) {
+        e[t] = new EfectesMoviment();
+        a[t] = new Aleatori(0);
+      }
+      this.efectesTrossos = e;
+      this.aleatorisTrossos = a;
+    }
+    for (int t=0; t<trossos; t++) {
+      this.aleatorisTrossos[t].setLlavor(joc.getLlavorTros(t));
+    }
+    
+    Joc.getPool().invoke(new MovimentTrossos(this, 0, trossos, len));
+    for (int t=trossos-1; t>=0; t--) {
+      this.efectesTrossos[t].aplica(joc);
+    }
+  }
+  
+  /**
+   * Mou els actors del tros donat: n'integra les posicions i n'aplica
+   * el comportament de darrere cap endavant.
+   */
+  private void mouTros(EfectesMoviment e, Aleatori a, int t, int len) {
+    final int i0 = t * MIDA_TROS;
+    final int i1 = Math.min(i0 + MIDA_TROS, len);
+    final double maxY = Joc.HEIGHT;
+    for (int i=i0; i<i1; i++) {
+      this.integra(i, maxY);
+    }
+    for (int i=i1-1; i>=i0; i--) {
+      this.comportament(e, a, i);
+    }
+  }
+  
+  /**
+   * Mou els actors dels trossos [t0, t1), dividint la feina fins a
+   * tenir un sol tros per tasca.
+   */
+  private static class MovimentTrossos extends RecursiveAction {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final ActorStore s;
+    private final int t0, t1, len;
+    
+    MovimentTrossos(ActorStore s, int t0, int t1, int len) {
+      this.s = s;
+      this.t0 = t0;
+      this.t1 = t1;
+      this.len = len;
+    }
+    
+    @Override
+    protected void compute() {
+      if (this.t1 - this.t0 > 1) {
+        final int m = (this.t0 + this.t1) >>> 1;
+        invokeAll(new MovimentTrossos(this.s, this.t0, m, this.len),
+                  new MovimentTrossos(this.s, m, this.t1, this.len));
+        return;
+      }
+      this.s.mouTros(this.s.efectesTrossos[this.t0],
+          this.s.aleatorisTrossos[this.t0], this.t0, this.len);
+    }
+    
+  }
+  
+  /**
+   * Integra la posició d'un actor segons la seva velocitat, sense
+   * deixar-lo sortir del món.
+   */
+  private void integra(int i, double maxY) {
+    this.xAnterior[i] = this.x[i];
+    this.yAnterior[i] = this.y[i];
+    this.x[i] = interval(0, this.x[i] + this.vx[i], Joc.WIDTH - this.amplada[i]);
+    this.y[i] = interval(0, this.y[i] + this.vy[i], maxY);
+  }
+  
+  /**
+   * Aplica el comportament propi del tipus de l'actor donat.
+   */
+  private void comportament(EfectesMoviment e, Aleatori a, int i) {
+    switch (this.tipus[i]) {
+    case INVASOR: Invasor.comportament(e, a, this, i); break;
+    case TRET:    Tret.comportament(this, i); break;
+    case JUGADOR: ((Jugador)this.vistes[i]).comportament(e); break;
+    }
+  }
+  
+  /**
+   * Elimina els actors marcats per esborrar, mantenint l'ordre de la
+   * resta. Els trets eliminats es retornen a la reserva donada, i si
+   * s'elimina el jugador es dona el joc per perdut.
+   * 
+   * @param joc Joc al que pertanyen els actors.
+   * @param pool Reserva on retornar els trets eliminats.
+   * @return nombre d'invasors que queden.
+   */
+  public int neteja(Joc joc, PoolTrets pool) {
+    int invasors = 0;
+    int w = 0;
+    for (int r=0; r<this.n; r++) {
+      final Actor v = this.vistes[r];
+      if ((this.indicadors[r] & PER_ESBORRAR) != 0) {
+        v.index = -1;
+        if (this.tipus[r] == JUGADOR) {
+          joc.setAcabat(Joc.JOC_PERDUT);
+        } else if (this.tipus[r] == TRET) {
+          pool.retorna((Tret)v);
+        }
+        continue;
+      }
+      if (this.tipus[r] == INVASOR) {
+        invasors++;
+      }
+      if (w != r) {
+        this.x[w] = this.x[r];
+        this.y[w] = this.y[r];
+        this.xAnterior[w] = this.xAnterior[r];
+        this.yAnterior[w] = this.yAnterior[r];
+        this.vx[w] = this.vx[r];
+        this.vy[w] = this.vy[r];
+        this.amplada[w] = this.amplada[r];
+        this.alcada[w] = this.alcada[r];
+        this.xInicial[w] = this.xInicial[r];
+        this.desviacio[w] = this.desviacio[r];
+        this.tipus[w] = this.tipus[r];
+        this.capa[w] = this.capa[r];
+        this.mascara[w] = this.mascara[r];
+        this.indicadors[w] = this.indicadors[r];
+        this.id[w] = this.id[r];
+        this.vistes[w] = v;
+        v.index = w;
+      }
+      w++;
+    }
+    Arrays.fill(this.vistes, w, this.n, null);
+    this.n = w;
+    return invasors;
+  }
+  
+  /**
+   * Compta quants actors del tipus donat hi ha al magatzem.
+   * 
+   * @param t Tipus d'actor a comptar.
+   * @return nombre d'actors d'aquest tipus.
+   */
+  public int compta(byte t) {
+    int c = 0;
+    for (int i=0; i<this.n; i++) {
+      if (this.tipus[i] == t) {
+        c++;
+      }
+    }
+    return c;
+  }
+  
+  /**
+   * Duplica la capacitat de tots els vectors.
+   */
+  private void creix() {
+    final int cap = this.x.length * 2;
+    this.x = Arrays.copyOf(this.x, cap);
+    this.y = Arrays.copyOf(this.y, cap);
+    this.xAnterior = Arrays.copyOf(this.xAnterior, cap);
+    this.yAnterior = Arrays.copyOf(this.yAnterior, cap);
+    this.vx = Arrays.copyOf(this.vx, cap);
+    this.vy = Arrays.copyOf(this.vy, cap);
+    this.amplada = Arrays.copyOf(this.amplada, cap);
+    this.alcada = Arrays.copyOf(this.alcada, cap);
+    this.xInicial = Arrays.copyOf(this.xInicial, cap);
+    this.desviacio = Arrays.copyOf(this.desviacio, cap);
+    this.tipus = Arrays.copyOf(this.tipus, cap);
+    this.capa = Arrays.copyOf(this.capa, cap);
+    this.mascara = Arrays.copyOf(this.mascara, cap);
+    this.indicadors = Arrays.copyOf(this.indicadors, cap);
+    this.id = Arrays.copyOf(this.id, cap);
+    this.vistes = Arrays.copyOf(this.vistes, cap);
+  }
+  
+  /**
+   * Força un valor a trobar-se dins l'interval determinat per
+   * min i max (ambdós inclosos).
+   * 
+   * @param min Mínim valor a retornar.
+   * @param value Valor a retornar si es troba dins l'interval.
+   * @return max Màxim valor a retornar.
+   */
+  private static double interval(double min, double value, double max) {
+    if (value < min) return min;
+    if (value > max) return max;
+    return value;
+  }
+  
+}
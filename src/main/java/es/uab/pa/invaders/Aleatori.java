@@ -0,0 +1,149 @@
+/*
+ * @(#)Aleatori.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Generador de números pseudoaleatoris ràpid (SplitMix64) i sense
+ * sincronització, pensat perquè cada joc (i cada fil d'un joc) tingui
+ * el seu.
+ * 
+ * A partir d'una llavor se'n poden derivar de noves amb
+ * <code>barreja</code>, per obtenir seqüències independents (per
+ * exemple, una per cada tros del moviment en paral·lel) que només
+ * depenen de la llavor del joc i de qui les fa servir, i no de l'ordre
+ * en què s'executen els fils.
+ * 
+ * No és segur entre fils: cada fil ha de fer servir el seu.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Aleatori {
+  
+  /**
+   * Increment de l'estat a cada número generat (part fraccionària de
+   * la raó àuria, senar).
+   */
+  private static final long GAMMA = 0x9E3779B97F4A7C15L;
+  
+  /**
+   * Comptador per donar llavors diferents als generadors creats sense
+   * llavor.
+   */
+  private static long llavorUnica = System.nanoTime();
+  
+  /**
+   * Estat del generador.
+   */
+  private long estat;
+  
+  /**
+   * Crea un generador amb la llavor donada.
+   * 
+   * @param llavor Llavor del generador.
+   */
+  public Aleatori(long llavor) {
+    this.estat = llavor;
+  }
+  
+  /**
+   * Torna a començar la seqüència amb la llavor donada.
+   * 
+   * @param llavor Nova llavor del generador.
+   */
+  public void setLlavor(long llavor) {
+    this.estat = llavor;
+  }
+  
+  /**
+   * Retorna l'estat actual del generador. Passant-lo a
+   * <code>setLlavor</code> la seqüència continua des d'aquest punt.
+   * 
+   * @return estat del generador.
+   */
+  long getEstat() {
+    return this.estat;
+  }
+  
+  /**
+   * Retorna el següent long de la seqüència.
+   * 
+   * @return número pseudoaleatori.
+   */
+  public long nextLong() {
+    this.estat += GAMMA;
+    return mescla(this.estat);
+  }
+  
+  /**
+   * Retorna el següent double de la seqüència, a l'interval [0, 1).
+   * 
+   * @return número pseudoaleatori entre 0 (inclòs) i 1 (exclòs).
+   */
+  public double nextDouble() {
+    return (this.nextLong() >>> 11) * 0x1.0p-53;
+  }
+  
+  /**
+   * Deriva una llavor nova a partir d'una llavor i dos identificadors,
+   * de manera que llavors o identificadors diferents donen seqüències
+   * independents.
+   * 
+   * @param llavor Llavor de partida.
+   * @param a Primer identificador.
+   * @param b Segon identificador.
+   * @return llavor derivada.
+   */
+  public static long barreja(long llavor, long a, long b) {
+    long h = mescla(llavor + GAMMA);
+    h = mescla(h ^ (a + 2*GAMMA));
+    return mescla(h ^ (b + 3*GAMMA));
+  }
+  
+  /**
+   * Retorna una llavor diferent a cada crida, per als generadors que no
+   * s'han de poder repetir.
+   * 
+   * @return llavor nova.
+   */
+  public static synchronized long novaLlavor() {
+    llavorUnica += GAMMA;
+    return mescla(llavorUnica ^ System.nanoTime());
+  }
+  
+  /**
+   * Funció de mescla de SplitMix64.
+   */
+  private static long mescla(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+  
+}
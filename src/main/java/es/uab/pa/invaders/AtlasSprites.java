@@ -0,0 +1,225 @@
+/*
+ * @(#)AtlasSprites.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+
+/**
+ * Imatge única on hi ha tots els sprites del joc (per a una relació
+ * món-pantalla concreta), un al costat de l'altre. Cada sprite es
+ * dibuixa copiant el seu tros de l'atles, de manera que totes les
+ * còpies llegeixen de la mateixa imatge.
+ * 
+ * Un cop construït l'atles no canvia mai. Mentre se'n genera un de nou
+ * (per exemple, quan la finestra canvia de mida) es pot fer servir una
+ * versió escalada de l'anterior, que comparteix la mateixa imatge.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class AtlasSprites {
+  
+  /**
+   * Separació (en píxels) entre sprites consecutius.
+   */
+  private static final int SEPARACIO = 1;
+  
+  /**
+   * Imatge amb tots els sprites.
+   */
+  private final Image imatge;
+  
+  /**
+   * Rectangle (x, y, amplada, alçada) de cada sprite dins de l'atles,
+   * indexat per identificador.
+   */
+  private final int[] rectangles;
+  
+  /**
+   * Mida (amplada, alçada) a la que es dibuixa cada sprite, indexada
+   * per identificador.
+   */
+  private final int[] mides;
+  
+  /**
+   * Atles del que s'ha tret la imatge (ell mateix si no és escalat).
+   */
+  private final AtlasSprites base;
+  
+  /**
+   * Relació món-pantalla per a la que s'ha generat l'atles.
+   */
+  private final double ratio;
+  
+  /**
+   * Genera l'atles amb els sprites dels generadors donats.
+   * 
+   * @param generadors Generador de cada sprite, indexat per
+   *        identificador (els <code>null</code> no tenen sprite).
+   * @param ratio relació d'aspecte món-pantalla.
+   */
+  public AtlasSprites(GeneradorSprite[] generadors, double ratio) {
+    this.ratio = ratio;
+    this.base = this;
+    this.rectangles = new int[generadors.length*4];
+    this.mides = new int[generadors.length*2];
+    
+    // Els posem tots en una fila
+    int amplada = 0, alcada = 1;
+    for (int id=0; id<generadors.length; id++) {
+      if (generadors[id] == null) {
+        continue;
+      }
+      final int w = generadors[id].getAmplada(ratio);
+      final int h = generadors[id].getAlcada(ratio);
+      this.rectangles[id*4]   = amplada;
+      this.rectangles[id*4+2] = w;
+      this.rectangles[id*4+3] = h;
+      this.mides[id*2]   = w;
+      this.mides[id*2+1] = h;
+      amplada += w + SEPARACIO;
+      alcada = Math.max(alcada, h);
+    }
+    
+    this.imatge = CacheImatges.getImage(Math.max(amplada, 1), alcada);
+    for (int id=0; id<generadors.length; id++) {
+      final int b = id*4;
+      if (generadors[id] == null || this.rectangles[b+2] <= 0 || this.rectangles[b+3] <= 0) {
+        continue;
+      }
+      final Graphics2D g = CacheImatges.getGraphics(this.imatge);
+      g.clipRect(this.rectangles[b], 0, this.rectangles[b+2], this.rectangles[b+3]);
+      g.translate(this.rectangles[b], 0);
+      generadors[id].dibuixa(g, this.rectangles[b+2], this.rectangles[b+3]);
+      g.dispose();
+    }
+  }
+  
+  /**
+   * Crea una versió escalada de l'atles donat, que dibuixa els seus
+   * sprites a la mida que tindrien per a la nova relació món-pantalla.
+   * 
+   * @param base Atles del que es treuen els sprites.
+   * @param generadors Generador de cada sprite, indexat per identificador.
+   * @param ratio nova relació d'aspecte món-pantalla.
+   */
+  private AtlasSprites(AtlasSprites base, GeneradorSprite[] generadors, double ratio) {
+    this.ratio = ratio;
+    this.base = base;
+    this.imatge = base.imatge;
+    this.rectangles = base.rectangles;
+    this.mides = new int[base.mides.length];
+    for (int id=0; id<generadors.length && id*2<this.mides.length; id++) {
+      if (generadors[id] != null && base.rectangles[id*4+2] > 0) {
+        this.mides[id*2]   = generadors[id].getAmplada(ratio);
+        this.mides[id*2+1] = generadors[id].getAlcada(ratio);
+      }
+    }
+  }
+  
+  /**
+   * Retorna una versió d'aquest atles que dibuixa els sprites escalats
+   * a la relació món-pantalla donada, sense tornar-los a generar.
+   * 
+   * @param generadors Generador de cada sprite, indexat per identificador.
+   * @param ratio nova relació d'aspecte món-pantalla.
+   * @return atles escalat.
+   */
+  public AtlasSprites escala(GeneradorSprite[] generadors, double ratio) {
+    return new AtlasSprites(this.base, generadors, ratio);
+  }
+  
+  /**
+   * Dibuixa l'sprite indicat a la posició (de pantalla) donada.
+   * 
+   * @param g Objecte graphics on dibuixar.
+   * @param id Identificador de l'sprite.
+   * @param x Coordenada x de pantalla.
+   * @param y Coordenada y de pantalla.
+   */
+  public void dibuixa(Graphics g, int id, int x, int y) {
+    final int b = id*4;
+    final int sx = this.rectangles[b], sy = this.rectangles[b+1];
+    final int sw = this.rectangles[b+2], sh = this.rectangles[b+3];
+    final int w = this.mides[id*2], h = this.mides[id*2+1];
+    if (w > 0 && h > 0) {
+      g.drawImage(this.imatge, x, y, x+w, y+h, sx, sy, sx+sw, sy+sh, null);
+    }
+  }
+  
+  /**
+   * Retorna l'amplada (en píxels) de l'sprite indicat.
+   * 
+   * @param id Identificador de l'sprite.
+   * @return amplada de l'sprite, o 0 si no n'hi ha.
+   */
+  public int getAmplada(int id) {
+    return this.mides[id*2];
+  }
+  
+  /**
+   * Retorna l'alçada (en píxels) de l'sprite indicat.
+   * 
+   * @param id Identificador de l'sprite.
+   * @return alçada de l'sprite, o 0 si no n'hi ha.
+   */
+  public int getAlcada(int id) {
+    return this.mides[id*2+1];
+  }
+  
+  /**
+   * Retorna la imatge amb tots els sprites.
+   * 
+   * @return imatge de l'atles.
+   */
+  public Image getImatge() {
+    return this.imatge;
+  }
+  
+  /**
+   * Retorna l'atles del que aquest treu els sprites.
+   * 
+   * @return atles generat (ell mateix si no és una versió escalada).
+   */
+  public AtlasSprites getBase() {
+    return this.base;
+  }
+  
+  /**
+   * Retorna la relació món-pantalla a la que l'atles dibuixa els sprites.
+   * 
+   * @return relació món-pantalla.
+   */
+  public double getRatio() {
+    return this.ratio;
+  }
+  
+}
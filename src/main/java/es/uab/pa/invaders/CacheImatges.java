@@ -33,8 +33,10 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import es.uab.pa.invaders.worldview.World;
 
@@ -42,138 +44,283 @@ import es.uab.pa.invaders.worldview.World;
  * Cache on es generen i emmagatzemen les versions bitmap de les imatges
  * vectorials del joc per tall de millorar-ne l'eficiència.
  * 
+ * Cada tipus d'actor (veure <code>ActorStore</code>) té registrat un
+ * <code>GeneradorSprite</code>, i tots els sprites per a la mida actual
+ * de la finestra es guarden junts en un <code>AtlasSprites</code>.
+ * 
+ * Quan la finestra canvia de mida el nou atles es genera en un thread
+ * a part, i mentrestant es dibuixen els sprites de l'anterior escalats.
+ * 
  * @author Marc Pujol <marc@la3.org>
  */
 public class CacheImatges {
   
   /**
-   * Joc per al que generem les imatges.
+   * Generador de l'sprite de cada tipus d'actor, indexat per
+   * identificador.
+   */
+  private static GeneradorSprite[] generadors = new GeneradorSprite[ActorStore.NOMBRE_TIPUS];
+  
+  static {
+    registra(ActorStore.INVASOR, new GeneradorSprite() {
+      public String getNom() { return "Invasor"; }
+      public int getAmplada(double ratio) { return (int)Math.floor(Invasor.WIDTH * ratio); }
+      public int getAlcada(double ratio) { return (int)Math.floor(Invasor.HEIGHT * ratio); }
+      public void dibuixa(Graphics2D g, int width, int height) {
+        dibuixaInvasor(g, width, height);
+      }
+    });
+    registra(ActorStore.JUGADOR, new GeneradorSprite() {
+      public String getNom() { return "Jugador"; }
+      public int getAmplada(double ratio) { return (int)(Jugador.WIDTH * ratio); }
+      public int getAlcada(double ratio) { return (int)(Jugador.HEIGHT * ratio); }
+      public void dibuixa(Graphics2D g, int width, int height) {
+        dibuixaJugador(g, width, height);
+      }
+    });
+    registra(ActorStore.TRET, new GeneradorSprite() {
+      public String getNom() { return "Tret"; }
+      public int getAmplada(double ratio) { return (int)Math.max(Tret.WIDTH * ratio, 1); }
+      public int getAlcada(double ratio) { return (int)Math.max(Tret.HEIGHT * ratio, 1); }
+      public void dibuixa(Graphics2D g, int width, int height) {
+        dibuixaTret(g, width, height);
+      }
+    });
+  }
+  
+  /**
+   * Thread on es regeneren els atles quan canvia la mida de la finestra.
+   */
+  private static final Executor generador = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      final Thread t = new Thread(r, "Generador d'sprites");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+  
+  /**
+   * Conversor món-pantalla que determina la mida de les imatges.
+   */
+  private World mon;
+  
+  /**
+   * Darrer atles generat, o <code>null</code> si encara no n'hi ha.
+   */
+  private volatile AtlasSprites atlas;
+  
+  /**
+   * Versió escalada de <code>atlas</code> que es fa servir mentre se'n
+   * genera un per a la nova mida.
+   */
+  private volatile AtlasSprites provisional;
+  
+  /**
+   * Relació món-pantalla per a la que s'han de dibuixar els sprites.
    */
-  private Joc joc;
+  private volatile double ratio;
   
   /**
-   * Taula on es guarden les imatges generades, indexades
-   * pel nom.
+   * Indica si hi ha una regeneració de l'atles esperant al generador.
    */
-  private HashMap<String, Image> imatges;
+  private final AtomicBoolean pendent = new AtomicBoolean();
   
   /**
-   * Construeix una nova cache d'imatges, per al joc donat.
+   * Píxels per unitat del món de les màscares de col·lisió. Les
+   * màscares no depenen de la mida de la finestra.
+   */
+  public static double RESOLUCIO_MASCARES = 1;
+  
+  /**
+   * Màscares de col·lisió ja generades, indexades per identificador
+   * d'sprite, i resolució a la que corresponen.
+   */
+  private static MascaraColisio[] mascares = new MascaraColisio[ActorStore.NOMBRE_TIPUS];
+  private static double resolucioMascares = RESOLUCIO_MASCARES;
+  
+  /**
+   * Construeix una nova cache d'imatges, per al conversor món-pantalla
+   * donat.
    * 
-   * @param joc joc per al que generem les imatges.
+   * @param mon conversor món-pantalla per al que generem les imatges.
    */
-  public CacheImatges(Joc joc) {
-    this.joc = joc;
-    this.imatges = new HashMap<String, Image>();
+  public CacheImatges(World mon) {
+    this.mon = mon;
+    this.ratio = this.getRatioMon();
+  }
+  
+  /**
+   * Registra el generador de l'sprite amb l'identificador donat. Els
+   * atles i màscares generats a partir d'ara el faran servir.
+   * 
+   * @param id Identificador de l'sprite (tipus d'actor).
+   * @param g Generador de l'sprite.
+   */
+  public static synchronized void registra(int id, GeneradorSprite g) {
+    if (id >= generadors.length) {
+      final GeneradorSprite[] gs = new GeneradorSprite[id+1];
+      System.arraycopy(generadors, 0, gs, 0, generadors.length);
+      generadors = gs;
+    }
+    generadors[id] = g;
+    mascares = new MascaraColisio[generadors.length];
+    GeneracioMascares.incrementa();
+  }
+  
+  /**
+   * Retorna l'identificador de l'sprite amb el nom donat.
+   * 
+   * @param nom Nom de l'sprite.
+   * @return identificador de l'sprite, o -1 si no existeix.
+   */
+  public static synchronized int getId(String nom) {
+    for (int id=0; id<generadors.length; id++) {
+      if (generadors[id] != null && generadors[id].getNom().equals(nom)) {
+        return id;
+      }
+    }
+    return -1;
   }
 
   /**
-   * Esborra les imatges de la caché, forçant la seva regeneració. Aquest
-   * mètode s'utilitza quan la finestra canvia de mida.
+   * Esborra les imatges de la caché, de manera que el proper
+   * <code>getAtlas</code> les tornarà a generar immediatament.
    */
   public void esborra() {
-    this.imatges = new HashMap<String, Image>();
+    this.ratio = this.getRatioMon();
+    this.atlas = null;
+    this.provisional = null;
   }
   
   /**
-   * Retorna la representació bitmap de la imatge indicada (per a la
-   * mida actual de la finestra), generant-la prèviament si és
-   * necessari.
+   * Torna a generar les imatges per a la mida actual de la finestra en
+   * un thread a part. Fins que estiguin a punt, <code>getAtlas</code>
+   * retorna les anteriors escalades. Aquest mètode s'utilitza quan la
+   * finestra canvia de mida.
+   */
+  public void regenera() {
+    this.ratio = this.getRatioMon();
+    if (this.atlas == null || !this.pendent.compareAndSet(false, true)) {
+      return;
+    }
+    generador.execute(new Runnable() {
+      public void run() {
+        // Si la mida torna a canviar mentre generem, es demanarà
+        // una altra regeneració.
+        pendent.set(false);
+        final double r = ratio;
+        final AtlasSprites a = atlas;
+        if (a == null || a.getRatio() == r) {
+          return;
+        }
+        final AtlasSprites nou = new AtlasSprites(getGeneradors(), r);
+        if (atlas != null) {
+          atlas = nou;
+        }
+      }
+    });
+  }
+  
+  /**
+   * Retorna l'atles amb la representació bitmap de tots els sprites
+   * per a la mida actual de la finestra. Si no n'hi ha cap el genera,
+   * i si se n'està generant un de nou retorna l'anterior escalat.
    * 
-   * @param nom Nom de la imatge a retornar.
-   * @return Representació bitmap de la imatge indicada.
+   * @return Atles amb tots els sprites.
    */
-  public Image get(String nom) {
-    if (this.imatges.containsKey(nom)) {
-      return this.imatges.get(nom);
+  public AtlasSprites getAtlas() {
+    final double r = this.ratio;
+    AtlasSprites a = this.atlas;
+    if (a == null) {
+      a = new AtlasSprites(getGeneradors(), r);
+      this.atlas = a;
     }
-    
-    World mon = joc.getMon();
-    Image img = null;
-    Object r = null;
-    try {
-      Method m = this.getClass().getDeclaredMethod("get"+nom, new Class[]{double.class});      
-      final double ratio = (mon.VXmax - mon.VXmin)/Joc.WIDTH;
-      r = m.invoke(this, ratio);
-    } catch (NoSuchMethodException e) {
-      return null;
-    } catch (Exception e) {
-      e.printStackTrace();
+    if (a.getRatio() == r) {
+      return a;
     }
     
-    if (r instanceof Image) {
-      img = (Image)r;
-      this.imatges.put(nom, img);
+    AtlasSprites p = this.provisional;
+    if (p == null || p.getRatio() != r || p.getBase() != a) {
+      p = a.escala(getGeneradors(), r);
+      this.provisional = p;
     }
-    
-    return img;
+    return p;
   }
   
   /**
-   * Retorna un bitmap de la imatge d'un invasor escalada
-   * segons la relació d'aspecte entre món i pantalla donada.
+   * Relació món-pantalla segons la mida actual del conversor.
+   */
+  private double getRatioMon() {
+    return (mon.VXmax - mon.VXmin)/Joc.WIDTH;
+  }
+  
+  /**
+   * Retorna la màscara de col·lisió de l'sprite indicat, generada a
+   * <code>RESOLUCIO_MASCARES</code> píxels per unitat del món amb el
+   * mateix generador que dibuixa l'sprite. Així qualsevol sprite nou té
+   * automàticament la seva màscara.
    * 
-   * @param ratio relació d'aspecte món-pantalla.
-   * @return imatge bitmap d'un invasor.
+   * @param id Identificador de l'sprite.
+   * @return Màscara de l'sprite, o <code>null</code> si no existeix.
    */
-  @SuppressWarnings("unused")
-  private Image getInvasor(double ratio) {
-    final int width = (int)Math.floor(Invasor.WIDTH * ratio);
-    final int height = (int)Math.floor(Invasor.HEIGHT * ratio);
-    
-    Image img = getImage(width, height);
-    Graphics2D g = getGraphics(img);
-
+  public static synchronized MascaraColisio getMascara(int id) {
+    if (resolucioMascares != RESOLUCIO_MASCARES) {
+      mascares = new MascaraColisio[generadors.length];
+      resolucioMascares = RESOLUCIO_MASCARES;
+      GeneracioMascares.incrementa();
+    }
+    if (id < 0 || id >= generadors.length || generadors[id] == null) {
+      return null;
+    }
+    if (mascares[id] == null) {
+      final GeneradorSprite gen = generadors[id];
+      final int w = gen.getAmplada(resolucioMascares);
+      final int h = gen.getAlcada(resolucioMascares);
+      if (w <= 0 || h <= 0) {
+        return null;
+      }
+      final Image img = getImage(w, h);
+      final Graphics2D g = getGraphics(img);
+      gen.dibuixa(g, w, h);
+      g.dispose();
+      mascares[id] = new MascaraColisio(img, resolucioMascares);
+    }
+    return mascares[id];
+  }
+  
+  /**
+   * Retorna una còpia dels generadors registrats.
+   */
+  private static synchronized GeneradorSprite[] getGeneradors() {
+    return generadors.clone();
+  }
+  
+  /**
+   * Dibuixa la imatge d'un invasor de la mida donada.
+   */
+  private static void dibuixaInvasor(Graphics2D g, int width, int height) {
     g.setColor(Colors.INVASOR_DINS);
     g.fillOval(0, 0, width-1, height-1);
     g.setColor(Colors.INVASOR_TRAS);
     g.drawOval(0, 0, width-1, height-1);
-
-    return img;
   }
 
   /**
-   * Retorna un bitmap de la imatge del jugador escalada
-   * segons la relació d'aspecte entre món i pantalla donada.
-   * 
-   * @param ratio relació d'aspecte món-pantalla.
-   * @return imatge bitmap del jugador.
+   * Dibuixa la imatge del jugador de la mida donada.
    */
-  @SuppressWarnings("unused")
-  private Image getJugador(double ratio) {
-    final int width = (int) (Jugador.WIDTH * ratio);
-    final int height = (int) (Jugador.HEIGHT * ratio);
-    
-    Image img = getImage(width, height);
-    Graphics2D g = getGraphics(img);
-    
+  private static void dibuixaJugador(Graphics2D g, int width, int height) {
     g.setColor(Colors.JUGADOR_DINS);
     g.fillPolygon(new int[] {0,width/2,width,width/2}, new int[] {height,0,height,height-height/3}, 4);
     g.setColor(Colors.JUGADOR_TRAS);
     g.drawPolygon(new int[] {0,width/2,width,width/2}, new int[] {height,0,height,height-height/3}, 4);
-    
-    return img;
   }
   
   /**
-   * Retorna un bitmap de la imatge d'un tret escalada
-   * segons la relació d'aspecte entre món i pantalla donada.
-   * 
-   * @param ratio relació d'aspecte món-pantalla.
-   * @return imatge bitmap d'un tret.
+   * Dibuixa la imatge d'un tret de la mida donada.
    */
-  @SuppressWarnings("unused")
-  private Image getTret(double ratio) {
-    final int width = (int) Math.max(Tret.WIDTH * ratio, 1);
-    final int height = (int) Math.max(Tret.HEIGHT * ratio, 1);
-    
-    Image img = getImage(width, height);
-    Graphics2D g = (Graphics2D)img.getGraphics();
-    
+  private static void dibuixaTret(Graphics2D g, int width, int height) {
     g.setColor(Colors.TRET);
     g.fillRect(0, 0, width, height);
-    
-    return img;
   }
   
   /**
@@ -184,7 +331,7 @@ public class CacheImatges {
    * @param height Alçada de la imatge.
    * @return Nova imatge off-screen per representar l'sprite.
    */
-  private Image getImage(int width, int height) {
+  static Image getImage(int width, int height) {
     Image img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
     return img;
   }
@@ -196,7 +343,7 @@ public class CacheImatges {
    * @param img Imatge on s'ha de dibuixar.
    * @return Objecte graphics de la imatge amb els paràmetres ajustats.
    */
-  private Graphics2D getGraphics(Image img) {
+  static Graphics2D getGraphics(Image img) {
     Graphics2D g = (Graphics2D) img.getGraphics();
     // Set best alpha interpolation quality
     g.setRenderingHint(
@@ -0,0 +1,125 @@
+/*
+ * @(#)CuaOrdres.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cua d'ordres sense bloquejos, on molts fils poden afegir ordres però
+ * només un (el del joc) les treu.
+ * 
+ * És una llista enllaçada on els productors s'apunten al final amb una
+ * sola operació atòmica (<code>getAndSet</code>) i després enllacen
+ * l'ordre anterior amb la seva. El consumidor segueix els enllaços
+ * des d'un node inicial que fa de sentinella; si troba un enllaç encara
+ * buit, l'ordre corresponent es llegirà al següent buidat.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public final class CuaOrdres {
+  
+  /**
+   * Última ordre afegida.
+   */
+  private final AtomicReference<Ordre> ultima;
+  
+  /**
+   * Última ordre ja treta (sentinella), només la fa servir el consumidor.
+   */
+  private Ordre sentinella;
+  
+  /**
+   * Crea una cua buida.
+   */
+  public CuaOrdres() {
+    this.sentinella = Ordre.acaba(Joc.JOC_EN_CURS);
+    this.ultima = new AtomicReference<Ordre>(this.sentinella);
+  }
+  
+  /**
+   * Afegeix una ordre al final de la cua. Es pot cridar des de
+   * qualsevol fil.
+   * 
+   * @param o Ordre a afegir.
+   */
+  public void afegeix(Ordre o) {
+    o.seguent = null;
+    final Ordre anterior = this.ultima.getAndSet(o);
+    anterior.seguent = o;
+  }
+  
+  /**
+   * Treu la primera ordre de la cua. Només l'ha de cridar el fil del joc.
+   * 
+   * @return primera ordre, o <code>null</code> si la cua és buida.
+   */
+  public Ordre treu() {
+    final Ordre o = this.sentinella.seguent;
+    if (o == null) {
+      return null;
+    }
+    // L'ordre treta passa a ser la nova sentinella
+    this.sentinella.seguent = null;
+    this.sentinella = o;
+    return o;
+  }
+  
+  /**
+   * Descarta totes les ordres de la cua sense executar-les. Només l'ha
+   * de cridar el fil del joc.
+   * 
+   * @return nombre d'ordres descartades.
+   */
+  public int descarta() {
+    int n = 0;
+    while (this.treu() != null) {
+      n++;
+    }
+    return n;
+  }
+  
+  /**
+   * Executa, per ordre d'arribada, totes les ordres de la cua sobre el
+   * joc donat. Només l'ha de cridar el fil del joc.
+   * 
+   * @param joc Joc on executar les ordres.
+   * @return nombre d'ordres executades.
+   */
+  public int executa(Joc joc) {
+    int n = 0;
+    Ordre o;
+    while ((o = this.treu()) != null) {
+      o.executa(joc);
+      n++;
+    }
+    return n;
+  }
+  
+}
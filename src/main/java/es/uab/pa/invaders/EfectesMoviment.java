@@ -0,0 +1,138 @@
+/*
+ * @(#)EfectesMoviment.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.Arrays;
+
+/**
+ * Efectes sobre el joc (trets nous, fi del joc...) que produeixen els
+ * actors en moure's. En lloc d'aplicar-los al moment es guarden en
+ * ordre, de manera que cada fil del moviment en paral·lel té els seus,
+ * i després s'apliquen tots seguits des d'un sol fil.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+final class EfectesMoviment {
+  
+  /**
+   * Tipus d'efecte: crear un tret.
+   */
+  private static final int TRET = 0;
+  
+  /**
+   * Tipus d'efecte: acabar el joc.
+   */
+  private static final int ACABAT = 1;
+  
+  /**
+   * Efectes guardats, com a parelles (tipus, paràmetre enter).
+   */
+  private int[] efectes = new int[64];
+  private int nEfectes;
+  
+  /**
+   * Paràmetres reals (x, y, vx, vy) dels trets a crear.
+   */
+  private double[] valors = new double[64];
+  private int nValors;
+  
+  /**
+   * Demana crear un tret.
+   * 
+   * @param tipus Tipus del tret.
+   * @param x Coordenada x inicial.
+   * @param y Coordenada y inicial.
+   * @param vx Velocitat horitzontal.
+   * @param vy Velocitat vertical.
+   */
+  void creaTret(int tipus, double x, double y, double vx, double vy) {
+    this.afegeix(TRET, tipus);
+    if (this.nValors + 4 > this.valors.length) {
+      this.valors = Arrays.copyOf(this.valors, this.valors.length*2);
+    }
+    this.valors[this.nValors++] = x;
+    this.valors[this.nValors++] = y;
+    this.valors[this.nValors++] = vx;
+    this.valors[this.nValors++] = vy;
+  }
+  
+  /**
+   * Demana acabar el joc amb l'estat donat.
+   * 
+   * @param estat Estat final del joc.
+   */
+  void acaba(int estat) {
+    this.afegeix(ACABAT, estat);
+  }
+  
+  /**
+   * Aplica al joc tots els efectes guardats, en l'ordre en què s'han
+   * produït, i els oblida.
+   * 
+   * @param joc Joc on aplicar els efectes.
+   */
+  void aplica(Joc joc) {
+    int v = 0;
+    for (int k=0; k<this.nEfectes; k+=2) {
+      final int p = this.efectes[k+1];
+      switch (this.efectes[k]) {
+      case TRET:
+        joc.afegirActor(joc.creaTret(p, this.valors[v], this.valors[v+1],
+            this.valors[v+2], this.valors[v+3]));
+        v += 4;
+        break;
+      case ACABAT:
+        joc.setAcabat(p);
+        break;
+      }
+    }
+    this.buida();
+  }
+  
+  /**
+   * Oblida tots els efectes guardats.
+   */
+  void buida() {
+    this.nEfectes = 0;
+    this.nValors = 0;
+  }
+  
+  /**
+   * Guarda un efecte.
+   */
+  private void afegeix(int tipus, int parametre) {
+    if (this.nEfectes + 2 > this.efectes.length) {
+      this.efectes = Arrays.copyOf(this.efectes, this.efectes.length*2);
+    }
+    this.efectes[this.nEfectes++] = tipus;
+    this.efectes[this.nEfectes++] = parametre;
+  }
+  
+}
@@ -0,0 +1,226 @@
+/*
+ * @(#)Enregistrador.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Enregistra les entrades del jugador (esquerra, dreta, disparar) a cada
+ * pas d'un joc, juntament amb la llavor del joc, per poder-lo reproduir
+ * després exactament igual amb un <code>Reproductor</code>.
+ * 
+ * El format és molt compacte: una capçalera (identificador, versió,
+ * llavor i passos per segon) seguida de les tongades de passos amb la
+ * mateixa entrada, com a parelles (nombre de passos en varint, entrada
+ * en un byte), i un zero final. Com que les entrades canvien poc,
+ * una partida sencera ocupa pocs bytes.
+ * 
+ * Es pot tancar des d'un fil diferent del del joc.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Enregistrador implements Closeable {
+  
+  /**
+   * Fitxer on s'enregistren les partides de la finestra, o
+   * <code>null</code> per no enregistrar-les.
+   */
+  public static String FITXER = null;
+  
+  /**
+   * Identificador dels fitxers d'enregistrament ("INVR").
+   */
+  static final int IDENTIFICADOR = 0x494E5652;
+  
+  /**
+   * Versió del format.
+   */
+  static final int VERSIO = 1;
+  
+  /**
+   * Bits de l'entrada del jugador.
+   */
+  static final int ESQUERRA = 1, DRETA = 2, DISPARA = 4;
+  
+  /**
+   * Flux on s'escriu l'enregistrament.
+   */
+  private final DataOutputStream out;
+  
+  /**
+   * Entrada de la tongada actual, i quants passos fa que dura.
+   */
+  private int entrada = -1;
+  private long passos;
+  
+  /**
+   * Indica si l'enregistrament ja s'ha tancat.
+   */
+  private boolean tancat;
+  
+  /**
+   * Crea un enregistrador que escriu al flux donat les entrades del joc
+   * indicat, que encara no ha d'haver fet cap pas.
+   * 
+   * @param out Flux on escriure l'enregistrament.
+   * @param joc Joc a enregistrar.
+   * @throws IOException si no es pot escriure la capçalera.
+   */
+  public Enregistrador(OutputStream out, Joc joc) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.out.writeInt(IDENTIFICADOR);
+    this.out.writeByte(VERSIO);
+    this.out.writeLong(joc.getLlavor());
+    escriuVarint(this.out, joc.getPassosPerSegon());
+  }
+  
+  /**
+   * Crea un enregistrador que escriu al fitxer donat les entrades del
+   * joc indicat.
+   * 
+   * @param fitxer Fitxer on escriure l'enregistrament.
+   * @param joc Joc a enregistrar.
+   * @return enregistrador nou.
+   * @throws IOException si no es pot crear el fitxer.
+   */
+  public static Enregistrador crea(String fitxer, Joc joc) throws IOException {
+    return new Enregistrador(new FileOutputStream(fitxer), joc);
+  }
+  
+  /**
+   * Enregistra l'entrada del jugador donat per al pas actual. El joc
+   * el crida a cada pas, just després d'executar les ordres pendents.
+   * 
+   * @param j Jugador del joc (o <code>null</code> si ja no hi és).
+   */
+  public synchronized void registra(Jugador j) {
+    if (this.tancat) {
+      return;
+    }
+    final int e = entrada(j);
+    if (e != this.entrada) {
+      try {
+        this.escriuTongada();
+      } catch (IOException ex) {
+        ex.printStackTrace();
+        this.tancat = true;
+        return;
+      }
+      this.entrada = e;
+    }
+    this.passos++;
+  }
+  
+  /**
+   * Acaba l'enregistrament i tanca el flux. Els passos que es
+   * registrin després s'ignoren.
+   * 
+   * @throws IOException si no es pot escriure el final.
+   */
+  public synchronized void close() throws IOException {
+    if (this.tancat) {
+      return;
+    }
+    this.tancat = true;
+    try {
+      this.escriuTongada();
+      escriuVarint(this.out, 0);
+    } finally {
+      this.out.close();
+    }
+  }
+  
+  /**
+   * Escriu la tongada actual, si n'hi ha.
+   */
+  private void escriuTongada() throws IOException {
+    if (this.passos > 0) {
+      escriuVarint(this.out, this.passos);
+      this.out.writeByte(this.entrada);
+    }
+    this.passos = 0;
+  }
+  
+  /**
+   * Codifica en bits l'entrada actual del jugador donat.
+   * 
+   * @param j Jugador (o <code>null</code> si ja no hi és).
+   * @return bits de l'entrada.
+   */
+  static int entrada(Jugador j) {
+    if (j == null) {
+      return 0;
+    }
+    return (j.esquerra ? ESQUERRA : 0) | (j.dreta ? DRETA : 0) | (j.disparar ? DISPARA : 0);
+  }
+  
+  /**
+   * Escriu un enter no negatiu amb 7 bits per byte (el bit alt indica
+   * que en segueixen més).
+   * 
+   * @param out Flux on escriure'l.
+   * @param v Valor a escriure.
+   * @throws IOException si no es pot escriure.
+   */
+  static void escriuVarint(DataOutput out, long v) throws IOException {
+    while ((v & ~0x7FL) != 0) {
+      out.writeByte((int)(v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte((int)v);
+  }
+  
+  /**
+   * Llegeix un enter escrit amb <code>escriuVarint</code>.
+   * 
+   * @param in Flux d'on llegir-lo.
+   * @return valor llegit.
+   * @throws IOException si no es pot llegir o el valor és massa llarg.
+   */
+  static long llegeixVarint(DataInput in) throws IOException {
+    long v = 0;
+    for (int desp=0; desp<64; desp+=7) {
+      final int b = in.readUnsignedByte();
+      v |= (long)(b & 0x7F) << desp;
+      if ((b & 0x80) == 0) {
+        return v;
+      }
+    }
+    throw new IOException("Varint massa llarg");
+  }
+  
+}
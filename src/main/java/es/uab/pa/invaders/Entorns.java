@@ -0,0 +1,400 @@
+/*
+ * @(#)Entorns.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Conjunt de N jocs independents que avancen alhora, pensat per entrenar
+ * jugadors automàtics. A cada pas es dona una acció per joc (un byte amb
+ * els bits <code>ESQUERRA</code>, <code>DRETA</code> i
+ * <code>DISPARA</code>), tots els jocs avancen un pas (en paral·lel, si
+ * n'hi ha prou) i s'escriuen a uns <code>ByteBuffer</code> (directes,
+ * preferiblement) donats la recompensa, l'indicador de final i
+ * l'observació de cada joc.
+ * 
+ * L'observació de cada joc són <code>getMidaObservacio()</code> floats:
+ * la posició (normalitzada entre 0 i 1) i la velocitat horitzontal del
+ * jugador, la posició de fins a <code>MAX_INVASORS</code> invasors i la
+ * posició i velocitat vertical de fins a <code>MAX_TRETS</code> trets
+ * (negativa pels del jugador, positiva pels dels invasors). Les
+ * posicions buides valen -1. Els valors s'escriuen amb l'ordre de bytes
+ * de cada buffer, sense moure'n la posició.
+ * 
+ * Quan un joc s'acaba (o arriba a <code>MAX_PASSOS_EPISODI</code>) es
+ * torna a començar amb una llavor nova, reaprofitant el mateix
+ * <code>Joc</code>, i l'observació que es retorna ja és la del joc nou.
+ * 
+ * Els passos no reserven memòria (a part de la que necessitin els
+ * propis jocs). Només s'ha de fer servir des d'un fil.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Entorns {
+  
+  /**
+   * Bits de les accions.
+   */
+  public static final int ESQUERRA = Enregistrador.ESQUERRA;
+  public static final int DRETA = Enregistrador.DRETA;
+  public static final int DISPARA = Enregistrador.DISPARA;
+  
+  /**
+   * Indicadors de final: el joc continua, s'ha acabat (guanyat o
+   * perdut) o s'ha tallat per haver arribat a
+   * <code>MAX_PASSOS_EPISODI</code>.
+   */
+  public static final byte EN_CURS = 0, ACABAT = 1, TALLAT = 2;
+  
+  /**
+   * Nombre màxim d'invasors per defecte a l'observació.
+   */
+  public static int MAX_INVASORS = 30;
+  
+  /**
+   * Nombre màxim de trets per defecte a l'observació.
+   */
+  public static int MAX_TRETS = 32;
+  
+  /**
+   * Nombre màxim de passos de cada partida.
+   */
+  public static long MAX_PASSOS_EPISODI = 20000;
+  
+  /**
+   * Nombre de jocs a partir del qual els passos es fan en paral·lel. Un
+   * valor no positiu ho desactiva.
+   */
+  public static int LLINDAR_PARALLEL = 16;
+  
+  /**
+   * Recompensa per cada invasor eliminat, per guanyar i per perdre.
+   */
+  public static float RECOMPENSA_INVASOR = 1;
+  public static float RECOMPENSA_VICTORIA = 10;
+  public static float RECOMPENSA_DERROTA = -10;
+  
+  /**
+   * Jocs.
+   */
+  private final Joc[] jocs;
+  
+  /**
+   * Llavor de la qual surten les llavors de cada partida.
+   */
+  private final long llavor;
+  
+  /**
+   * Nombre de partides començades per cada joc.
+   */
+  private final long[] episodis;
+  
+  /**
+   * Invasors que quedaven a cada joc abans del pas.
+   */
+  private final int[] invasors;
+  
+  /**
+   * Nombre màxim d'invasors i trets a l'observació.
+   */
+  private final int maxInvasors, maxTrets;
+  
+  /**
+   * Nombre de floats de l'observació de cada joc.
+   */
+  private final int midaObservacio;
+  
+  /**
+   * Accions i buffers del pas en curs, per als fils.
+   */
+  private byte[] accions;
+  private ByteBuffer recompenses, acabats, observacions;
+  
+  /**
+   * Tasques (reaprofitades) per fer els passos en paral·lel: una arrel
+   * i un tros de jocs consecutius per a cada tasca.
+   */
+  private final PassosTrossos arrel;
+  private final PassosTrossos[] trossos;
+  
+  /**
+   * Crea N jocs independents, ja iniciats. La partida k-èssima del joc
+   * i-èssim fa servir la llavor <code>Aleatori.barreja(llavor, i, k)</code>.
+   * 
+   * @param n Nombre de jocs.
+   * @param llavor Llavor de les partides.
+   */
+  public Entorns(int n, long llavor) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("Nombre de jocs invàlid: " + n);
+    }
+    this.llavor = llavor;
+    this.jocs = new Joc[n];
+    this.episodis = new long[n];
+    this.invasors = new int[n];
+    this.maxInvasors = MAX_INVASORS;
+    this.maxTrets = MAX_TRETS;
+    this.midaObservacio = 3 + 2*this.maxInvasors + 3*this.maxTrets;
+    for (int i=0; i<n; i++) {
+      this.jocs[i] = new Joc(Aleatori.barreja(llavor, i, 0));
+      this.jocs[i].getPerfilador().setActiu(false);
+      this.jocs[i].inici();
+      this.invasors[i] = this.jocs[i].getNombreInvasors();
+    }
+    
+    final int t = Math.min(n, 4 * Joc.getPool().getParallelism());
+    this.trossos = new PassosTrossos[t];
+    for (int k=0; k<t; k++) {
+      this.trossos[k] = new PassosTrossos(this, k*n/t, (k+1)*n/t, null);
+    }
+    this.arrel = new PassosTrossos(this, 0, n, this.trossos);
+  }
+  
+  /**
+   * Retorna el nombre de jocs.
+   * 
+   * @return nombre de jocs.
+   */
+  public int getNombre() {
+    return this.jocs.length;
+  }
+  
+  /**
+   * Retorna el nombre de floats de l'observació de cada joc.
+   * 
+   * @return mida de cada observació.
+   */
+  public int getMidaObservacio() {
+    return this.midaObservacio;
+  }
+  
+  /**
+   * Retorna el joc i-èssim.
+   * 
+   * @param i Índex del joc.
+   * @return joc.
+   */
+  public Joc getJoc(int i) {
+    return this.jocs[i];
+  }
+  
+  /**
+   * Torna a començar tots els jocs i n'escriu l'observació inicial.
+   * 
+   * @param observacions Buffer de com a mínim
+   * <code>getNombre() * getMidaObservacio() * 4</code> bytes.
+   */
+  public void reinicia(ByteBuffer observacions) {
+    comprova(observacions, this.jocs.length * this.midaObservacio * 4, "observacions");
+    for (int i=0; i<this.jocs.length; i++) {
+      this.reinicia(i);
+      this.observa(i, observacions);
+    }
+  }
+  
+  /**
+   * Avança un pas tots els jocs amb les accions donades.
+   * 
+   * @param accions Acció de cada joc (bits <code>ESQUERRA</code>,
+   * <code>DRETA</code> i <code>DISPARA</code>).
+   * @param recompenses Buffer on escriure la recompensa (float) de
+   * cada joc.
+   * @param acabats Buffer on escriure l'indicador de final (byte) de
+   * cada joc.
+   * @param observacions Buffer on escriure l'observació de cada joc.
+   */
+  public void pas(byte[] accions, ByteBuffer recompenses, ByteBuffer acabats,
+      ByteBuffer observacions) {
+    final int n = this.jocs.length;
+    if (accions.length < n) {
+      throw new IllegalArgumentException("Falten accions: " + accions.length + " < " + n);
+    }
+    comprova(recompenses, n * 4, "recompenses");
+    comprova(acabats, n, "acabats");
+    comprova(observacions, n * this.midaObservacio * 4, "observacions");
+    
+    this.accions = accions;
+    this.recompenses = recompenses;
+    this.acabats = acabats;
+    this.observacions = observacions;
+    try {
+      if (LLINDAR_PARALLEL > 0 && n >= LLINDAR_PARALLEL && this.trossos.length > 1) {
+        final ForkJoinPool pool = Joc.getPool();
+        this.arrel.reinitialize();
+        for (PassosTrossos t : this.trossos) {
+          t.reinitialize();
+        }
+        pool.invoke(this.arrel);
+      } else {
+        for (int i=0; i<n; i++) {
+          this.pas(i);
+        }
+      }
+    } finally {
+      this.accions = null;
+      this.recompenses = this.acabats = this.observacions = null;
+    }
+  }
+  
+  /**
+   * Avança un pas el joc i-èssim, n'escriu els resultats i, si s'ha
+   * acabat, el torna a començar.
+   */
+  private void pas(int i) {
+    final Joc joc = this.jocs[i];
+    final Jugador j = joc.getJugador();
+    final int a = this.accions[i];
+    j.esquerra = (a & ESQUERRA) != 0;
+    j.dreta = (a & DRETA) != 0;
+    if ((a & DISPARA) != 0) {
+      j.disparar = true;
+    }
+    joc.pas();
+    
+    float r = (this.invasors[i] - joc.getNombreInvasors()) * RECOMPENSA_INVASOR;
+    byte fi = EN_CURS;
+    if (joc.isAcabat()) {
+      r += joc.getEstat() == Joc.JOC_GUANYAT ? RECOMPENSA_VICTORIA : RECOMPENSA_DERROTA;
+      fi = ACABAT;
+    } else if (joc.getNombrePassos() >= MAX_PASSOS_EPISODI) {
+      fi = TALLAT;
+    }
+    this.recompenses.putFloat(i * 4, r);
+    this.acabats.put(i, fi);
+    
+    if (fi != EN_CURS) {
+      this.reinicia(i);
+    } else {
+      this.invasors[i] = joc.getNombreInvasors();
+    }
+    this.observa(i, this.observacions);
+  }
+  
+  /**
+   * Comença una partida nova al joc i-èssim.
+   */
+  private void reinicia(int i) {
+    final Joc joc = this.jocs[i];
+    joc.inici(Aleatori.barreja(this.llavor, i, ++this.episodis[i]));
+    this.invasors[i] = joc.getNombreInvasors();
+  }
+  
+  /**
+   * Escriu l'observació del joc i-èssim.
+   */
+  private void observa(int i, ByteBuffer b) {
+    final ActorStore s = this.jocs[i].getStore();
+    final Jugador j = this.jocs[i].getJugador();
+    final float ample = (float)Joc.WIDTH, alt = (float)Joc.HEIGHT;
+    int p = i * this.midaObservacio * 4;
+    
+    if (j != null && j.isEnJoc()) {
+      b.putFloat(p, (float)s.x[j.index] / ample);
+      b.putFloat(p + 4, (float)s.y[j.index] / alt);
+      b.putFloat(p + 8, (float)s.vx[j.index]);
+    } else {
+      b.putFloat(p, -1);
+      b.putFloat(p + 4, -1);
+      b.putFloat(p + 8, 0);
+    }
+    p += 12;
+    
+    final int pInvasors = p;
+    final int pTrets = pInvasors + 8*this.maxInvasors;
+    int nInvasors = 0, nTrets = 0;
+    for (int k=0; k<s.n; k++) {
+      if (s.tipus[k] == ActorStore.INVASOR && nInvasors < this.maxInvasors) {
+        final int q = pInvasors + 8*nInvasors++;
+        b.putFloat(q, (float)s.x[k] / ample);
+        b.putFloat(q + 4, (float)s.y[k] / alt);
+      } else if (s.tipus[k] == ActorStore.TRET && nTrets < this.maxTrets) {
+        final int q = pTrets + 12*nTrets++;
+        b.putFloat(q, (float)s.x[k] / ample);
+        b.putFloat(q + 4, (float)s.y[k] / alt);
+        b.putFloat(q + 8, (float)s.vy[k]);
+      }
+    }
+    for (int k=nInvasors; k<this.maxInvasors; k++) {
+      b.putFloat(pInvasors + 8*k, -1);
+      b.putFloat(pInvasors + 8*k + 4, -1);
+    }
+    for (int k=nTrets; k<this.maxTrets; k++) {
+      b.putFloat(pTrets + 12*k, -1);
+      b.putFloat(pTrets + 12*k + 4, -1);
+      b.putFloat(pTrets + 12*k + 8, 0);
+    }
+  }
+  
+  /**
+   * Comprova que el límit del buffer donat deixa escriure com a mínim els
+   * bytes indicats, ja que les escriptures absolutes no poden passar-lo.
+   */
+  private static void comprova(ByteBuffer b, int mida, String nom) {
+    if (b.limit() < mida) {
+      throw new IllegalArgumentException("El buffer de " + nom + " és massa petit: "
+          + b.limit() + " < " + mida);
+    }
+  }
+  
+  /**
+   * Fa el pas dels jocs [i0, i1), o bé (si és l'arrel) el de tots els
+   * trossos en paral·lel. Les tasques es reaprofiten d'un pas a l'altre.
+   */
+  private static class PassosTrossos extends RecursiveAction {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final Entorns e;
+    private final int i0, i1;
+    private final PassosTrossos[] fills;
+    
+    PassosTrossos(Entorns e, int i0, int i1, PassosTrossos[] fills) {
+      this.e = e;
+      this.i0 = i0;
+      this.i1 = i1;
+      this.fills = fills;
+    }
+    
+    @Override
+    protected void compute() {
+      if (this.fills != null) {
+        invokeAll(this.fills);
+        return;
+      }
+      for (int i=this.i0; i<this.i1; i++) {
+        this.e.pas(i);
+      }
+    }
+    
+  }
+  
+}
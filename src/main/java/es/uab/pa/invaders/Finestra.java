@@ -29,6 +29,8 @@
 
 package es.uab.pa.invaders;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Frame;
@@ -41,6 +43,8 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferStrategy;
+import java.io.IOException;
 
 import es.uab.pa.invaders.worldview.World;
 
@@ -66,6 +70,20 @@ public class Finestra extends Frame {
    * Alçada per defecte de la pantalla.
    */
   public static int HEIGHT = 500;
+  
+  /**
+   * Indica si el joc es presenta activament des del seu propi thread,
+   * amb un <code>BufferStrategy</code> (<code>true</code>), o bé
+   * dibuixant-lo al buffer off-screen i demanant un
+   * <code>repaint()</code> a la finestra (<code>false</code>).
+   */
+  public static boolean RENDERITZAT_ACTIU = true;
+  
+  /**
+   * Nombre de buffers del <code>BufferStrategy</code> en mode actiu
+   * (2 per doble buffer, 3 per triple buffer).
+   */
+  public static int NOMBRE_BUFFERS = 2;
 
   /**
    * Buffer "off-screen" on es dibuixa el joc abans de
@@ -84,6 +102,22 @@ public class Finestra extends Frame {
    */
   private Joc joc;
   
+  /**
+   * Perfilador compartit per totes les partides de la finestra.
+   */
+  private final Perfilador perfilador = new Perfilador();
+  
+  /**
+   * Renderitzador que dibuixa el joc en aquesta finestra.
+   */
+  private RenderitzadorFinestra renderitzador;
+  
+  /**
+   * Superfície on es presenta el joc en mode actiu (<code>null</code>
+   * en mode passiu).
+   */
+  private Canvas llenc;
+  
   /**
    * Constructor per defecte, que inicialitza el joc.
    */
@@ -95,7 +129,11 @@ public class Finestra extends Frame {
     this.mon.setDimensionView(WIDTH, HEIGHT, 0, 0);
     this.mon.setDimensionWorld(Joc.WIDTH, Joc.HEIGHT, 0, 0);
     
-    this.setPreferredSize(this.mon.getRectangleView().getSize());
+    if (RENDERITZAT_ACTIU) {
+      this.creaLlenc();
+    } else {
+      this.setPreferredSize(this.mon.getRectangleView().getSize());
+    }
     this.pack();
     
     // Inicialitzem el buffer
@@ -106,6 +144,8 @@ public class Finestra extends Frame {
     // tancar la finestra principal.
     this.addWindowListener(new WindowAdapter() {
       public void windowClosing(WindowEvent e) {
+        perfilador.desa();
+        tancaEnregistrament();
         System.exit(0);
       }
     });
@@ -133,15 +173,9 @@ public class Finestra extends Frame {
         }
         d = f.getSize();
         
-        // Redimensionem el "mon"
-        f.getMon().setDimensionView(d.width, d.height, 0, 0);
-        
-        // Creem un nou buffer pel nou tamany
-        creaBuffer();
-        
-        // Regenerem les imatges
-        if (joc != null) {
-          joc.regeneraImatges();
+        // En mode actiu és el llenç qui s'encarrega de la resta
+        if (llenc == null) {
+          redimensiona(d.width, d.height);
         }
         
       }
@@ -153,8 +187,7 @@ public class Finestra extends Frame {
         if (joc != null && joc.isAcabat()) {
           switch(e.getKeyCode()) {
           case KeyEvent.VK_T:
-            joc = new Joc(Finestra.this);
-            new Thread(joc).start();
+            nouJoc();
             break;
           }
         }
@@ -162,8 +195,97 @@ public class Finestra extends Frame {
     });
     
     this.setVisible(true);
-    this.joc = new Joc(this);
-    new Thread(joc).start();
+    if (this.llenc != null) {
+      this.llenc.createBufferStrategy(NOMBRE_BUFFERS);
+    }
+    this.renderitzador = new RenderitzadorFinestra(this);
+    this.nouJoc();
+  }
+  
+  /**
+   * Comença un joc nou en el seu propi thread. Si s'han d'enregistrar
+   * les partides (veure <code>Enregistrador.FITXER</code>), l'enregistrament
+   * de la partida anterior es tanca i el nou el substitueix.
+   */
+  private void nouJoc() {
+    this.tancaEnregistrament();
+    final Joc j = new Joc(this.renderitzador);
+    j.setPerfilador(this.perfilador);
+    if (Enregistrador.FITXER != null) {
+      try {
+        j.setEnregistrador(Enregistrador.crea(Enregistrador.FITXER, j));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    this.joc = j;
+    new Thread(j).start();
+  }
+  
+  /**
+   * Tanca l'enregistrament de la partida actual, si n'hi ha.
+   */
+  private void tancaEnregistrament() {
+    if (this.joc == null || this.joc.getEnregistrador() == null) {
+      return;
+    }
+    try {
+      this.joc.getEnregistrador().close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+  
+  /**
+   * Crea el llenç on es presenta el joc en mode actiu. La finestra deixa
+   * de repintar-se sola: és el thread del joc qui mostra cada imatge.
+   */
+  private void creaLlenc() {
+    this.llenc = new Canvas() {
+      private static final long serialVersionUID = 1L;
+      
+      // Només cal repintar des d'aquí quan el joc ja s'ha aturat.
+      public void paint(Graphics g) {
+        if (renderitzador != null) {
+          renderitzador.representa();
+        }
+      }
+      
+      public void update(Graphics g) {
+        this.paint(g);
+      }
+    };
+    this.llenc.setPreferredSize(this.mon.getRectangleView().getSize());
+    this.llenc.setFocusable(false);
+    this.setIgnoreRepaint(true);
+    this.add(this.llenc, BorderLayout.CENTER);
+    
+    this.llenc.addComponentListener(new ComponentAdapter() {
+      public void componentResized(ComponentEvent e) {
+        final Dimension d = e.getComponent().getSize();
+        redimensiona(d.width, d.height);
+      }
+    });
+  }
+  
+  /**
+   * Adapta el món, el buffer i les imatges a una nova mida de la
+   * superfície on es dibuixa.
+   * 
+   * @param ample Nova amplada en píxels.
+   * @param alt Nova alçada en píxels.
+   */
+  private void redimensiona(int ample, int alt) {
+    // Redimensionem el "mon"
+    this.mon.setDimensionView(ample, alt, 0, 0);
+    
+    // Creem un nou buffer pel nou tamany
+    this.creaBuffer();
+    
+    // Regenerem les imatges
+    if (this.renderitzador != null) {
+      this.renderitzador.regeneraImatges();
+    }
   }
   
   /**
@@ -185,9 +307,13 @@ public class Finestra extends Frame {
    * Redibuixa la finestra.
    */
   @Override public void paint(Graphics g) {
+    final long inici = this.perfilador.inici();
     synchronized (this.buffer) {
       g.drawImage(this.buffer, 0, 0, this); 
     }
+    if (this.llenc == null) {
+      this.perfilador.registra(Perfilador.PRESENTACIO, inici);
+    }
   }
 
   /**
@@ -200,6 +326,17 @@ public class Finestra extends Frame {
     return this.buffer;
   }
   
+  /**
+   * Retorna l'estratègia de buffers amb la que es presenta el joc en
+   * mode actiu.
+   * 
+   * @return estratègia de buffers, o <code>null</code> si la finestra
+   * funciona en mode passiu (o encara no s'ha pogut crear).
+   */
+  public BufferStrategy getBufferStrategyActiva() {
+    return this.llenc == null ? null : this.llenc.getBufferStrategy();
+  }
+  
   /**
    * Retorna l'objecte conversor mon-pantalla-mon.
    * 
@@ -0,0 +1,345 @@
+/*
+ * @(#)Formes.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Proves de col·lisió exactes entre les formes dels actors (el·lipses,
+ * triangles, rectangles i punts), resoltes analíticament i sense crear
+ * cap objecte.
+ * 
+ * Substitueixen les operacions amb <code>java.awt.geom.Area</code>, i en
+ * segueixen la semàntica: dues formes que només es toquen per la vora
+ * no col·lisionen, i les formes buides no col·lisionen amb res. L'única
+ * diferència és a prop de la vora de les el·lipses, que <code>Area</code>
+ * aproxima amb corbes de Bézier.
+ * 
+ * Les el·lipses i els rectangles es donen amb la seva caixa
+ * (<code>x, y, amplada, alçada</code>), i els triangles amb els seus
+ * tres vèrtexs.
+ * 
+ * Les proves escombrades (<code>temps*</code>) mouen la primera forma
+ * en línia recta un desplaçament <code>(dx, dy)</code>, i retornen la
+ * fracció del desplaçament (entre 0 i 1) en què comença a solapar-se
+ * amb la segona, o <code>SENSE_IMPACTE</code> si no s'arriben a
+ * solapar. Si totes dues formes es mouen, n'hi ha prou de fer servir
+ * el desplaçament relatiu.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public final class Formes {
+  
+  /**
+   * Valor que retornen les proves escombrades quan no hi ha impacte.
+   */
+  public static final double SENSE_IMPACTE = -1;
+  
+  private Formes() {
+  }
+  
+  /**
+   * Indica si l'el·lipse conté el punt donat.
+   * 
+   * @return <code>true</code> si el punt és dins de l'el·lipse.
+   */
+  public static boolean elipseContePunt(double ex, double ey, double ew, double eh,
+      double px, double py) {
+    if (ew <= 0 || eh <= 0) {
+      return false;
+    }
+    final double u = (px - ex) / ew * 2 - 1;
+    final double v = (py - ey) / eh * 2 - 1;
+    return u*u + v*v < 1;
+  }
+  
+  /**
+   * Indica si l'el·lipse i el rectangle donats se solapen.
+   * 
+   * Escalant els eixos perquè l'el·lipse sigui el cercle unitat, el
+   * rectangle continua sent un rectangle, i n'hi ha prou de mirar la
+   * distància del centre al punt més proper del rectangle.
+   * 
+   * @return <code>true</code> si les dues formes se solapen.
+   */
+  public static boolean elipseIntersectaRect(double ex, double ey, double ew, double eh,
+      double rx, double ry, double rw, double rh) {
+    if (ew <= 0 || eh <= 0 || rw <= 0 || rh <= 0) {
+      return false;
+    }
+    final double a = ew / 2, b = eh / 2;
+    final double cx = ex + a, cy = ey + b;
+    final double u = limita(0, (rx - cx) / a, (rx + rw - cx) / a);
+    final double v = limita(0, (ry - cy) / b, (ry + rh - cy) / b);
+    return u*u + v*v < 1;
+  }
+  
+  /**
+   * Indica si el triangle i el rectangle donats se solapen, pel teorema
+   * de l'eix separador: n'hi ha prou de provar els dos eixos del
+   * rectangle i les normals dels tres costats del triangle.
+   * 
+   * @return <code>true</code> si les dues formes se solapen.
+   */
+  public static boolean triangleIntersectaRect(double ax, double ay, double bx, double by,
+      double cx, double cy, double rx, double ry, double rw, double rh) {
+    if (rw <= 0 || rh <= 0 || areaDoble(ax, ay, bx, by, cx, cy) == 0) {
+      return false;
+    }
+    
+    // Eixos del rectangle
+    if (Math.max(ax, Math.max(bx, cx)) <= rx || Math.min(ax, Math.min(bx, cx)) >= rx + rw
+        || Math.max(ay, Math.max(by, cy)) <= ry || Math.min(ay, Math.min(by, cy)) >= ry + rh) {
+      return false;
+    }
+    
+    // Normals dels costats del triangle
+    final double mx = rx + rw/2, my = ry + rh/2;
+    return !separa(ax, ay, bx, by, cx, cy, mx, my, rw/2, rh/2)
+        && !separa(bx, by, cx, cy, ax, ay, mx, my, rw/2, rh/2)
+        && !separa(cx, cy, ax, ay, bx, by, mx, my, rw/2, rh/2);
+  }
+  
+  /**
+   * Indica si el triangle i l'el·lipse donats se solapen.
+   * 
+   * Escalant els eixos perquè l'el·lipse sigui el cercle unitat, el
+   * triangle continua sent un triangle, i se solapen si algun vèrtex és
+   * dins del cercle, si el centre és dins del triangle o si algun costat
+   * passa a menys d'una unitat del centre.
+   * 
+   * @return <code>true</code> si les dues formes se solapen.
+   */
+  public static boolean triangleIntersectaElipse(double ax, double ay, double bx, double by,
+      double cx, double cy, double ex, double ey, double ew, double eh) {
+    if (ew <= 0 || eh <= 0 || areaDoble(ax, ay, bx, by, cx, cy) == 0) {
+      return false;
+    }
+    final double a = ew / 2, b = eh / 2;
+    final double ox = ex + a, oy = ey + b;
+    final double ua = (ax - ox) / a, va = (ay - oy) / b;
+    final double ub = (bx - ox) / a, vb = (by - oy) / b;
+    final double uc = (cx - ox) / a, vc = (cy - oy) / b;
+    
+    if (ua*ua + va*va < 1 || ub*ub + vb*vb < 1 || uc*uc + vc*vc < 1) {
+      return true;
+    }
+    if (triangleContePunt(ua, va, ub, vb, uc, vc, 0, 0)) {
+      return true;
+    }
+    return distanciaSegmentOrigenQuadrat(ua, va, ub, vb) < 1
+        || distanciaSegmentOrigenQuadrat(ub, vb, uc, vc) < 1
+        || distanciaSegmentOrigenQuadrat(uc, vc, ua, va) < 1;
+  }
+  
+  /**
+   * Indica si el triangle conté (estrictament) el punt donat.
+   * 
+   * @return <code>true</code> si el punt és dins del triangle.
+   */
+  public static boolean triangleContePunt(double ax, double ay, double bx, double by,
+      double cx, double cy, double px, double py) {
+    final double d1 = areaDoble(ax, ay, bx, by, px, py);
+    final double d2 = areaDoble(bx, by, cx, cy, px, py);
+    final double d3 = areaDoble(cx, cy, ax, ay, px, py);
+    return (d1 > 0 && d2 > 0 && d3 > 0) || (d1 < 0 && d2 < 0 && d3 < 0);
+  }
+  
+  /**
+   * Instant en què el punt, en moure's <code>(dx, dy)</code>, entra a
+   * l'el·lipse donada.
+   * 
+   * @return fracció del desplaçament en què el punt entra a l'el·lipse
+   * (0 si ja hi era), o <code>SENSE_IMPACTE</code>.
+   */
+  public static double tempsPuntElipse(double px, double py, double dx, double dy,
+      double ex, double ey, double ew, double eh) {
+    if (ew <= 0 || eh <= 0) {
+      return SENSE_IMPACTE;
+    }
+    
+    // Al cercle unitat: |p + t*d|^2 < 1
+    final double u = (px - ex) / ew * 2 - 1, v = (py - ey) / eh * 2 - 1;
+    final double du = dx / ew * 2, dv = dy / eh * 2;
+    final double c = u*u + v*v - 1;
+    if (c < 0) {
+      return 0;
+    }
+    final double a = du*du + dv*dv;
+    final double b = 2 * (u*du + v*dv);
+    final double disc = b*b - 4*a*c;
+    if (a == 0 || disc <= 0) {
+      return SENSE_IMPACTE;
+    }
+    final double t = (-b - Math.sqrt(disc)) / (2*a);
+    return (t >= 0 && t < 1) ? t : SENSE_IMPACTE;
+  }
+  
+  /**
+   * Instant en què el primer rectangle, en moure's <code>(dx, dy)</code>,
+   * comença a solapar-se amb el segon.
+   * 
+   * @return fracció del desplaçament en què se solapen per primer cop
+   * (0 si ja se solapaven), o <code>SENSE_IMPACTE</code>.
+   */
+  public static double tempsRectRect(double ax, double ay, double aw, double ah,
+      double dx, double dy, double bx, double by, double bw, double bh) {
+    if (aw <= 0 || ah <= 0 || bw <= 0 || bh <= 0) {
+      return SENSE_IMPACTE;
+    }
+    final double t0 = Math.max(entrada(ax, ax + aw, dx, bx, bx + bw),
+                               entrada(ay, ay + ah, dy, by, by + bh));
+    final double t1 = Math.min(sortida(ax, ax + aw, dx, bx, bx + bw),
+                               sortida(ay, ay + ah, dy, by, by + bh));
+    return impacte(t0, t1);
+  }
+  
+  /**
+   * Instant en què el rectangle, en moure's <code>(dx, dy)</code>,
+   * comença a solapar-se amb el triangle, pel teorema de l'eix separador
+   * aplicat a cada eix al llarg del temps.
+   * 
+   * @return fracció del desplaçament en què se solapen per primer cop
+   * (0 si ja se solapaven), o <code>SENSE_IMPACTE</code>.
+   */
+  public static double tempsRectTriangle(double rx, double ry, double rw, double rh,
+      double dx, double dy, double ax, double ay, double bx, double by,
+      double cx, double cy) {
+    if (rw <= 0 || rh <= 0 || areaDoble(ax, ay, bx, by, cx, cy) == 0) {
+      return SENSE_IMPACTE;
+    }
+    
+    // Eixos del rectangle
+    final double txMin = Math.min(ax, Math.min(bx, cx)), txMax = Math.max(ax, Math.max(bx, cx));
+    final double tyMin = Math.min(ay, Math.min(by, cy)), tyMax = Math.max(ay, Math.max(by, cy));
+    double t0 = Math.max(entrada(rx, rx + rw, dx, txMin, txMax),
+                         entrada(ry, ry + rh, dy, tyMin, tyMax));
+    double t1 = Math.min(sortida(rx, rx + rw, dx, txMin, txMax),
+                         sortida(ry, ry + rh, dy, tyMin, tyMax));
+    
+    // Normals dels costats del triangle
+    final double hx = rw/2, hy = rh/2, mx = rx + hx, my = ry + hy;
+    t0 = Math.max(t0, costat(true,  ax, ay, bx, by, cx, cy, mx, my, hx, hy, dx, dy));
+    t1 = Math.min(t1, costat(false, ax, ay, bx, by, cx, cy, mx, my, hx, hy, dx, dy));
+    t0 = Math.max(t0, costat(true,  bx, by, cx, cy, ax, ay, mx, my, hx, hy, dx, dy));
+    t1 = Math.min(t1, costat(false, bx, by, cx, cy, ax, ay, mx, my, hx, hy, dx, dy));
+    t0 = Math.max(t0, costat(true,  cx, cy, ax, ay, bx, by, mx, my, hx, hy, dx, dy));
+    t1 = Math.min(t1, costat(false, cx, cy, ax, ay, bx, by, mx, my, hx, hy, dx, dy));
+    return impacte(t0, t1);
+  }
+  
+  /**
+   * Primer (<code>entrada</code>) o últim instant en què el rectangle
+   * mòbil, amb centre (mx, my) i semieixos (hx, hy), se solapa amb el
+   * triangle (p, q, s) sobre la normal del costat (p, q).
+   */
+  private static double costat(boolean entrada, double px, double py, double qx, double qy,
+      double sx, double sy, double mx, double my, double hx, double hy, double dx, double dy) {
+    final double nx = py - qy, ny = qx - px;
+    final double d = nx*px + ny*py, ds = nx*sx + ny*sy;
+    final double c = nx*mx + ny*my;
+    final double e = Math.abs(nx)*hx + Math.abs(ny)*hy;
+    final double v = nx*dx + ny*dy;
+    final double s0 = Math.min(d, ds), s1 = Math.max(d, ds);
+    return entrada ? entrada(c - e, c + e, v, s0, s1) : sortida(c - e, c + e, v, s0, s1);
+  }
+  
+  /**
+   * Primer instant en què l'interval mòbil <code>(m0, m1) + t*v</code>
+   * se solapa amb l'interval fix <code>(s0, s1)</code>.
+   */
+  private static double entrada(double m0, double m1, double v, double s0, double s1) {
+    if (v == 0) {
+      return (m0 < s1 && m1 > s0) ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    return v > 0 ? (s0 - m1) / v : (s1 - m0) / v;
+  }
+  
+  /**
+   * Últim instant en què l'interval mòbil <code>(m0, m1) + t*v</code>
+   * se solapa amb l'interval fix <code>(s0, s1)</code>.
+   */
+  private static double sortida(double m0, double m1, double v, double s0, double s1) {
+    if (v == 0) {
+      return (m0 < s1 && m1 > s0) ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+    }
+    return v > 0 ? (s1 - m0) / v : (s0 - m1) / v;
+  }
+  
+  /**
+   * Instant d'impacte a partir de l'interval de temps <code>(t0, t1)</code>
+   * en què les formes se solapen.
+   */
+  private static double impacte(double t0, double t1) {
+    if (t0 >= t1 || t0 >= 1 || t1 <= 0) {
+      return SENSE_IMPACTE;
+    }
+    return Math.max(t0, 0);
+  }
+  
+  /**
+   * Indica si la normal del costat (p, q) separa el triangle (p, q, r) del
+   * rectangle amb centre (mx, my) i semieixos (sx, sy).
+   */
+  private static boolean separa(double px, double py, double qx, double qy,
+      double rx, double ry, double mx, double my, double sx, double sy) {
+    final double nx = py - qy, ny = qx - px;
+    final double d = nx*px + ny*py;
+    final double dr = nx*rx + ny*ry;
+    final double c = nx*mx + ny*my;
+    final double e = Math.abs(nx)*sx + Math.abs(ny)*sy;
+    return dr > d ? c + e <= d : c - e >= d;
+  }
+  
+  /**
+   * Doble de l'àrea (amb signe) del triangle (a, b, c).
+   */
+  private static double areaDoble(double ax, double ay, double bx, double by,
+      double cx, double cy) {
+    return (bx - ax)*(cy - ay) - (by - ay)*(cx - ax);
+  }
+  
+  /**
+   * Quadrat de la distància de l'origen al segment (a, b).
+   */
+  private static double distanciaSegmentOrigenQuadrat(double ax, double ay, double bx, double by) {
+    final double dx = bx - ax, dy = by - ay;
+    final double l = dx*dx + dy*dy;
+    final double t = l == 0 ? 0 : limita(-(ax*dx + ay*dy) / l, 0, 1);
+    final double x = ax + t*dx, y = ay + t*dy;
+    return x*x + y*y;
+  }
+  
+  /**
+   * Limita el valor v a l'interval [min, max].
+   */
+  private static double limita(double v, double min, double max) {
+    return v < min ? min : (v > max ? max : v);
+  }
+  
+}
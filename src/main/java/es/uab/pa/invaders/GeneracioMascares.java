@@ -0,0 +1,70 @@
+/*
+ * @(#)GeneracioMascares.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Generació de les màscares de col·lisió de <code>CacheImatges</code>,
+ * que augmenta cada vegada que es descarten (en registrar un generador o
+ * canviar <code>CacheImatges.RESOLUCIO_MASCARES</code>). Els jocs la
+ * consulten per saber quan han de refrescar les còpies que en guarden.
+ * 
+ * Està separada de <code>CacheImatges</code> perquè consultar-la no
+ * carregui AWT en els jocs sense finestra.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+final class GeneracioMascares {
+  
+  /**
+   * Generació actual. Només s'incrementa des dels mètodes sincronitzats
+   * de <code>CacheImatges</code>.
+   */
+  private static volatile int generacio;
+  
+  private GeneracioMascares() {
+  }
+  
+  /**
+   * Retorna la generació actual de les màscares.
+   * 
+   * @return generació de les màscares.
+   */
+  static int get() {
+    return generacio;
+  }
+  
+  /**
+   * Indica que les màscares obtingudes fins ara ja no són vàlides.
+   */
+  static void incrementa() {
+    generacio++;
+  }
+  
+}
@@ -0,0 +1,76 @@
+/*
+ * @(#)GeneradorSprite.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.awt.Graphics2D;
+
+/**
+ * Generador de la versió bitmap d'un sprite, per a una relació
+ * món-pantalla donada. Cada tipus d'actor en registra un a
+ * <code>CacheImatges</code>.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public interface GeneradorSprite {
+  
+  /**
+   * Retorna el nom de l'sprite.
+   * 
+   * @return nom de l'sprite.
+   */
+  public String getNom();
+  
+  /**
+   * Retorna l'amplada (en píxels) de l'sprite.
+   * 
+   * @param ratio relació d'aspecte món-pantalla.
+   * @return amplada de l'sprite.
+   */
+  public int getAmplada(double ratio);
+  
+  /**
+   * Retorna l'alçada (en píxels) de l'sprite.
+   * 
+   * @param ratio relació d'aspecte món-pantalla.
+   * @return alçada de l'sprite.
+   */
+  public int getAlcada(double ratio);
+  
+  /**
+   * Dibuixa l'sprite a partir de la posició (0,0) de l'objecte
+   * graphics donat.
+   * 
+   * @param g Objecte graphics on dibuixar.
+   * @param amplada Amplada de l'sprite.
+   * @param alcada Alçada de l'sprite.
+   */
+  public void dibuixa(Graphics2D g, int amplada, int alcada);
+  
+}
@@ -0,0 +1,317 @@
+/*
+ * @(#)Graella.java      1.0    2008/30/06
+ *
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.Arrays;
+
+/**
+ * Graella uniforme que fa de primera fase ("broadphase") de la detecció
+ * de col·lisions. Cada actor es reparteix a totes les cel·les que toca
+ * la seva caixa, i només les parelles que comparteixen alguna cel·la
+ * arriben a <code>Actor.hasColisio</code>.
+ *
+ * Dins de cada cel·la els actors s'agrupen per capa de col·lisió, i
+ * només es recorren les parelles de grups amb capes compatibles.
+ *
+ * Les parelles es retornen sense repeticions i ordenades igual que les
+ * recorreria el bucle de totes-contra-totes (índex menor primer), de
+ * manera que el resultat de les col·lisions no canvia.
+ *
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Graella {
+
+  /**
+   * Mida (en dimensions món) del costat de cada cel·la.
+   */
+  private double midaCella;
+
+  /**
+   * Nombre de columnes i files de la graella.
+   */
+  private int columnes, files;
+
+  /**
+   * Rang de cel·les (inclòs) que ocupa cada actor.
+   */
+  private int[] cx0 = new int[0], cy0 = new int[0], cx1 = new int[0], cy1 = new int[0];
+
+  /**
+   * Capa (com a índex, no com a bit) de cada actor.
+   */
+  private int[] capa = new int[0];
+
+  /**
+   * Unió de les màscares dels actors de cada capa.
+   */
+  private final int[] mascaraCapa = new int[Actor.NOMBRE_CAPES];
+
+  /**
+   * Posició on comença cada grup (cel·la, capa) dins de
+   * <code>entrades</code>.
+   */
+  private int[] inici = new int[1];
+
+  /**
+   * Índexs dels actors, agrupats per cel·la i capa.
+   */
+  private int[] entrades = new int[0];
+
+  /**
+   * Parelles candidates, codificades com <code>(i << 32) | j</code>.
+   */
+  private long[] parelles = new long[16];
+
+  /**
+   * Nombre de parelles candidates vàlides dins de <code>parelles</code>.
+   */
+  private int nParelles;
+
+  /**
+   * Crea una nova graella que cobreix el món indicat.
+   *
+   * @param midaCella Mida del costat de cada cel·la.
+   * @param amplada Amplada del món.
+   * @param alcada Alçada del món.
+   */
+  public Graella(double midaCella, double amplada, double alcada) {
+    this.setDimensions(midaCella, amplada, alcada);
+  }
+
+  /**
+   * Canvia la mida de les cel·les i/o del món cobert.
+   *
+   * @param midaCella Mida del costat de cada cel·la.
+   * @param amplada Amplada del món.
+   * @param alcada Alçada del món.
+   */
+  public void setDimensions(double midaCella, double amplada, double alcada) {
+    if (midaCella <= 0) {
+      throw new IllegalArgumentException("Mida de cel·la invàlida: " + midaCella);
+    }
+    this.midaCella = midaCella;
+    this.columnes  = Math.max(1, (int)Math.ceil(amplada / midaCella));
+    this.files     = Math.max(1, (int)Math.ceil(alcada / midaCella));
+    this.inici     = new int[this.columnes * this.files * Actor.NOMBRE_CAPES + 1];
+  }
+
+  /**
+   * Retorna la mida de les cel·les.
+   *
+   * @return mida del costat de cada cel·la.
+   */
+  public double getMidaCella() {
+    return midaCella;
+  }
+
+  /**
+   * Reparteix els actors del magatzem donat per les cel·les de la
+   * graella, segons la caixa (posició i mida) de cadascun.
+   *
+   * @param s Magatzem amb els actors a repartir.
+   */
+  public void construeix(ActorStore s) {
+    this.construeix(s, false);
+  }
+  
+  /**
+   * Reparteix els actors del magatzem donat per les cel·les de la
+   * graella. Si és <code>escombrat</code>, la caixa de cada actor
+   * cobreix tot el seu recorregut durant el darrer pas (des de la
+   * posició anterior fins l'actual).
+   * 
+   * @param s Magatzem amb els actors a repartir.
+   * @param escombrat Si s'ha de tenir en compte el recorregut dels actors.
+   */
+  public void construeix(ActorStore s, boolean escombrat) {
+    final int n = s.n;
+    this.reserva(n);
+
+    // Rang de cel·les de cada actor i recompte per grup
+    Arrays.fill(this.inici, 0);
+    Arrays.fill(this.mascaraCapa, 0);
+    int total = 0;
+    for (int i=0; i<n; i++) {
+      final int l = Integer.numberOfTrailingZeros(s.capa[i]);
+      capa[i] = l;
+      mascaraCapa[l] |= s.mascara[i];
+      double x0 = s.x[i], x1 = x0;
+      double y0 = s.y[i], y1 = y0;
+      if (escombrat) {
+        x0 = Math.min(x0, s.xAnterior[i]);
+        x1 = Math.max(x1, s.xAnterior[i]);
+        y0 = Math.min(y0, s.yAnterior[i]);
+        y1 = Math.max(y1, s.yAnterior[i]);
+      }
+      cx0[i] = columna(x0);
+      cy0[i] = fila(y0);
+      cx1[i] = columna(x1 + s.amplada[i]);
+      cy1[i] = fila(y1 + s.alcada[i]);
+      for (int cy=cy0[i]; cy<=cy1[i]; cy++) {
+        for (int cx=cx0[i]; cx<=cx1[i]; cx++) {
+          this.inici[grup(cy*columnes + cx, l) + 1]++;
+        }
+      }
+      total += (cx1[i]-cx0[i]+1) * (cy1[i]-cy0[i]+1);
+    }
+
+    // Sumes acumulades: inici[g] és on comença el grup g
+    for (int c=1; c<this.inici.length; c++) {
+      this.inici[c] += this.inici[c-1];
+    }
+
+    // Omplim els grups en ordre d'índex, fent servir inici[g] com a
+    // cursor; en acabar cada inici[g] apunta al final del grup, i
+    // ho desfem desplaçant el vector una posició.
+    if (this.entrades.length < total) {
+      this.entrades = new int[total*2];
+    }
+    for (int i=0; i<n; i++) {
+      for (int cy=cy0[i]; cy<=cy1[i]; cy++) {
+        for (int cx=cx0[i]; cx<=cx1[i]; cx++) {
+          final int g = grup(cy*columnes + cx, capa[i]);
+          this.entrades[this.inici[g]++] = i;
+        }
+      }
+    }
+    for (int g=this.inici.length-1; g>0; g--) {
+      this.inici[g] = this.inici[g-1];
+    }
+    this.inici[0] = 0;
+  }
+
+  /**
+   * Cerca totes les parelles d'actors de capes compatibles que
+   * comparteixen alguna cel·la. Cada parella apareix un sol cop, amb
+   * l'índex menor primer, i la llista resultant està ordenada.
+   *
+   * @return nombre de parelles trobades.
+   */
+  public int cercaParelles() {
+    this.nParelles = 0;
+    final int cells = columnes * files;
+    for (int c=0; c<cells; c++) {
+      final int cx = c % columnes;
+      final int cy = c / columnes;
+      for (int la=0; la<Actor.NOMBRE_CAPES; la++) {
+        final int ia = this.inici[grup(c, la)];
+        final int fa = this.inici[grup(c, la) + 1];
+        if (ia == fa) {
+          continue;
+        }
+        for (int lb=la; lb<Actor.NOMBRE_CAPES; lb++) {
+          if (!compatibles(la, lb)) {
+            continue;
+          }
+          final int ib = this.inici[grup(c, lb)];
+          final int fb = this.inici[grup(c, lb) + 1];
+          for (int e=ia; e<fa; e++) {
+            final int i = this.entrades[e];
+            for (int f=(la == lb ? e+1 : ib); f<fb; f++) {
+              final int j = this.entrades[f];
+
+              // Només comptem la parella a la primera cel·la que comparteixen
+              if (Math.max(cx0[i], cx0[j]) == cx && Math.max(cy0[i], cy0[j]) == cy) {
+                this.afegeixParella(Math.min(i, j), Math.max(i, j));
+              }
+            }
+          }
+        }
+      }
+    }
+    Arrays.sort(this.parelles, 0, this.nParelles);
+    return this.nParelles;
+  }
+
+  /**
+   * Retorna les parelles trobades per l'última crida a
+   * <code>cercaParelles</code>, codificades com <code>(i << 32) | j</code>.
+   *
+   * @return vector de parelles (només són vàlides les primeres).
+   */
+  public long[] getParelles() {
+    return this.parelles;
+  }
+
+  /**
+   * Afegeix una parella candidata.
+   */
+  private void afegeixParella(int i, int j) {
+    if (this.nParelles == this.parelles.length) {
+      this.parelles = Arrays.copyOf(this.parelles, this.nParelles*2);
+    }
+    this.parelles[this.nParelles++] = ((long)i << 32) | j;
+  }
+
+  /**
+   * Indica si les capes (índexs) donades poden col·lisionar.
+   */
+  private boolean compatibles(int la, int lb) {
+    return (mascaraCapa[la] & (1 << lb)) != 0 || (mascaraCapa[lb] & (1 << la)) != 0;
+  }
+
+  /**
+   * Índex del grup corresponent a la cel·la i capa donades.
+   */
+  private static int grup(int cella, int capa) {
+    return cella*Actor.NOMBRE_CAPES + capa;
+  }
+
+  /**
+   * Assegura que els vectors per actor tenen capacitat per a n actors.
+   */
+  private void reserva(int n) {
+    if (this.cx0.length < n) {
+      final int cap = Math.max(n, this.cx0.length*2);
+      this.cx0 = new int[cap];
+      this.cy0 = new int[cap];
+      this.cx1 = new int[cap];
+      this.cy1 = new int[cap];
+      this.capa = new int[cap];
+    }
+  }
+
+  /**
+   * Columna on cau la coordenada x donada (limitada a la graella).
+   */
+  private int columna(double x) {
+    final int c = (int)Math.floor(x / midaCella);
+    return c < 0 ? 0 : (c >= columnes ? columnes-1 : c);
+  }
+
+  /**
+   * Fila on cau la coordenada y donada (limitada a la graella).
+   */
+  private int fila(double y) {
+    final int f = (int)Math.floor(y / midaCella);
+    return f < 0 ? 0 : (f >= files ? files-1 : f);
+  }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * @(#)Histograma.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Histograma de durades (en nanosegons) amb un nombre fix de caselles,
+ * per mesurar latències sense reservar memòria.
+ * 
+ * Les caselles són logarítmiques: cada potència de dos es divideix en
+ * <code>SUBDIVISIONS</code> caselles iguals, de manera que l'error
+ * relatiu dels percentils és com a molt 1/<code>SUBDIVISIONS</code>.
+ * Els valors per sota de <code>SUBDIVISIONS</code> tenen casella pròpia.
+ * 
+ * Només hi ha d'escriure un fil. Es pot llegir des d'altres fils (per
+ * mostrar-lo), tot i que llavors les dades poden no ser del tot
+ * coherents entre si.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Histograma {
+  
+  /**
+   * Bits de subdivisió de cada potència de dos.
+   */
+  private static final int BITS = 4;
+  
+  /**
+   * Nombre de caselles en què es divideix cada potència de dos.
+   */
+  public static final int SUBDIVISIONS = 1 << BITS;
+  
+  /**
+   * Nombre total de caselles (suficients per a qualsevol long positiu).
+   */
+  private static final int CASELLES = (64 - BITS + 1) * SUBDIVISIONS;
+  
+  /**
+   * Recompte de valors de cada casella.
+   */
+  private final long[] comptes = new long[CASELLES];
+  
+  /**
+   * Nombre de valors, suma i màxim.
+   */
+  private long n, suma, maxim;
+  
+  /**
+   * Afegeix un valor a l'histograma.
+   * 
+   * @param v Valor a afegir (els negatius compten com a 0).
+   */
+  public void registra(long v) {
+    if (v < 0) {
+      v = 0;
+    }
+    this.comptes[casella(v)]++;
+    this.n++;
+    this.suma += v;
+    if (v > this.maxim) {
+      this.maxim = v;
+    }
+  }
+  
+  /**
+   * Afegeix a aquest histograma tots els valors d'un altre (per
+   * exemple, per resumir els de moltes sessions).
+   * 
+   * @param h Histograma amb els valors a afegir.
+   */
+  public void afegeix(Histograma h) {
+    for (int c=0; c<CASELLES; c++) {
+      this.comptes[c] += h.comptes[c];
+    }
+    this.n += h.n;
+    this.suma += h.suma;
+    if (h.maxim > this.maxim) {
+      this.maxim = h.maxim;
+    }
+  }
+  
+  /**
+   * Retorna el valor per sota del qual hi ha la fracció p dels valors
+   * (arrodonit al límit superior de la seva casella).
+   * 
+   * @param p Fracció entre 0 i 1 (0.5 per la mediana, 0.99 pel p99...).
+   * @return percentil demanat, o 0 si l'histograma és buit.
+   */
+  public long percentil(double p) {
+    final long total = this.n;
+    if (total == 0) {
+      return 0;
+    }
+    final long objectiu = Math.max(1, (long)Math.ceil(p * total));
+    long acumulat = 0;
+    for (int c=0; c<CASELLES; c++) {
+      acumulat += this.comptes[c];
+      if (acumulat >= objectiu) {
+        return Math.min(limitSuperior(c), this.maxim);
+      }
+    }
+    return this.maxim;
+  }
+  
+  /**
+   * Retorna el nombre de valors afegits.
+   * 
+   * @return nombre de valors.
+   */
+  public long getNombre() {
+    return this.n;
+  }
+  
+  /**
+   * Retorna el valor més gran afegit.
+   * 
+   * @return valor màxim.
+   */
+  public long getMaxim() {
+    return this.maxim;
+  }
+  
+  /**
+   * Retorna la mitjana dels valors afegits.
+   * 
+   * @return mitjana, o 0 si l'histograma és buit.
+   */
+  public double getMitjana() {
+    return this.n == 0 ? 0 : (double)this.suma / this.n;
+  }
+  
+  /**
+   * Buida l'histograma.
+   */
+  public void buida() {
+    Arrays.fill(this.comptes, 0);
+    this.n = this.suma = this.maxim = 0;
+  }
+  
+  /**
+   * Escriu les caselles no buides de l'histograma, una per línia, amb
+   * el seu límit inferior, el superior i el recompte.
+   * 
+   * @param out On escriure.
+   */
+  public void escriu(PrintWriter out) {
+    for (int c=0; c<CASELLES; c++) {
+      if (this.comptes[c] != 0) {
+        out.println(limitInferior(c) + "\t" + limitSuperior(c) + "\t" + this.comptes[c]);
+      }
+    }
+  }
+  
+  /**
+   * Casella on va a parar el valor (no negatiu) donat.
+   */
+  static int casella(long v) {
+    if (v < SUBDIVISIONS) {
+      return (int)v;
+    }
+    final int e = 63 - Long.numberOfLeadingZeros(v);
+    final int sub = (int)(v >>> (e - BITS)) & (SUBDIVISIONS - 1);
+    return (e - BITS + 1) * SUBDIVISIONS + sub;
+  }
+  
+  /**
+   * Valor més petit que va a parar a la casella donada.
+   */
+  static long limitInferior(int c) {
+    if (c < SUBDIVISIONS) {
+      return c;
+    }
+    final int e = c / SUBDIVISIONS + BITS - 1;
+    final long sub = c % SUBDIVISIONS;
+    return (SUBDIVISIONS + sub) << (e - BITS);
+  }
+  
+  /**
+   * Valor més gran que va a parar a la casella donada.
+   */
+  static long limitSuperior(int c) {
+    if (c < SUBDIVISIONS) {
+      return c;
+    }
+    final int e = c / SUBDIVISIONS + BITS - 1;
+    return limitInferior(c) + (1L << (e - BITS)) - 1;
+  }
+  
+}
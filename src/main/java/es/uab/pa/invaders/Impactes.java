@@ -0,0 +1,103 @@
+/*
+ * @(#)Impactes.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.Arrays;
+
+/**
+ * Llista de col·lisions trobades durant un pas: parella d'actors
+ * (codificada com <code>(i << 32) | j</code>, amb i &lt; j) i instant
+ * d'impacte dins del pas de cadascuna.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+final class Impactes {
+  
+  /**
+   * Parelles d'actors que col·lisionen.
+   */
+  long[] parelles = new long[16];
+  
+  /**
+   * Instant (entre 0 i 1) de cada impacte.
+   */
+  float[] temps = new float[16];
+  
+  /**
+   * Nombre d'impactes vàlids.
+   */
+  int n;
+  
+  /**
+   * Afegeix un impacte al final de la llista.
+   * 
+   * @param i Índex del primer actor.
+   * @param j Índex del segon actor (més gran que i).
+   * @param t Instant de l'impacte.
+   */
+  void afegeix(int i, int j, float t) {
+    if (this.n == this.parelles.length) {
+      this.reserva(this.n*2);
+    }
+    this.parelles[this.n] = ((long)i << 32) | j;
+    this.temps[this.n] = t;
+    this.n++;
+  }
+  
+  /**
+   * Afegeix al final tots els impactes de l'altra llista.
+   * 
+   * @param o Llista d'impactes a afegir.
+   */
+  void afegeixTots(Impactes o) {
+    if (this.n + o.n > this.parelles.length) {
+      this.reserva(Math.max(this.n + o.n, this.parelles.length*2));
+    }
+    System.arraycopy(o.parelles, 0, this.parelles, this.n, o.n);
+    System.arraycopy(o.temps, 0, this.temps, this.n, o.n);
+    this.n += o.n;
+  }
+  
+  /**
+   * Buida la llista.
+   */
+  void buida() {
+    this.n = 0;
+  }
+  
+  /**
+   * Amplia la capacitat de la llista.
+   */
+  private void reserva(int cap) {
+    this.parelles = Arrays.copyOf(this.parelles, cap);
+    this.temps = Arrays.copyOf(this.temps, cap);
+  }
+  
+}
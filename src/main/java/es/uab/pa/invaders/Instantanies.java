@@ -0,0 +1,570 @@
+/*
+ * @(#)Instantanies.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Desa i restaura l'estat d'un joc en un format binari compacte, a
+ * través de canals NIO. Hi ha dues menes d'instantànies: les completes,
+ * amb tots els actors, i les incrementals, que només guarden els actors
+ * que han canviat des de la instantània anterior (més la llista
+ * d'identificadors dels que hi ha, per saber quins han sortit).
+ * 
+ * Cada instantània es desa com un registre: la longitud (4 bytes) i el
+ * contingut, que comença amb l'identificador del format, la versió i
+ * el tipus d'instantània. Després hi ha l'estat del joc (llavor, passos,
+ * estat, generador aleatori, jugador) i els actors en ordre, cadascun
+ * amb la diferència d'identificador respecte l'anterior (en varint) i,
+ * si ha canviat, tots els seus valors.
+ * 
+ * Per restaurar un joc es llegeix una instantània completa i totes les
+ * incrementals que la segueixen. No es desen la configuració del joc
+ * (mida de cel·la, tipus de col·lisions...) ni les ordres pendents.
+ * 
+ * Només s'ha de fer servir des del fil del joc (o amb el joc aturat).
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Instantanies {
+  
+  /**
+   * Identificador de les instantànies ("INVS").
+   */
+  static final int IDENTIFICADOR = 0x494E5653;
+  
+  /**
+   * Versió del format.
+   */
+  static final int VERSIO = 1;
+  
+  /**
+   * Tipus d'instantània: completa.
+   */
+  static final int COMPLETA = 0;
+  
+  /**
+   * Tipus d'instantània: incremental.
+   */
+  static final int INCREMENTAL = 1;
+  
+  /**
+   * Nombre de valors reals de cada actor (veure <code>reals</code>).
+   */
+  private static final int NOMBRE_REALS = 10;
+  
+  /**
+   * Mida màxima que pot ocupar un actor dins una instantània.
+   */
+  private static final int MIDA_MAXIMA_ACTOR = 5 + 1 + 3*5 + NOMBRE_REALS*8;
+  
+  /**
+   * Mida màxima que pot ocupar la capçalera d'una instantània.
+   */
+  private static final int MIDA_MAXIMA_CAPCALERA = 4 + 4 + 1 + 1 + 8 + 10 + 5 + 8 + 5 + 5 + 1 + 8 + 5;
+  
+  /**
+   * Joc del que es desen (o on es restauren) les instantànies.
+   */
+  private Joc joc;
+  
+  /**
+   * Actors tal com eren a l'última instantània desada: identificadors,
+   * tipus, capa, màscara, indicadors i valors reals.
+   */
+  private int[] ids = new int[0];
+  private byte[] tipus = new byte[0];
+  private int[] capa = new int[0], mascara = new int[0], indicadors = new int[0];
+  private final double[][] reals = new double[NOMBRE_REALS][0];
+  private int n = -1;
+  
+  /**
+   * Buffer on es prepara cada instantània abans d'escriure-la, o on es
+   * llegeix abans d'aplicar-la.
+   */
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+  
+  /**
+   * Buffer on es llegeix la longitud de cada registre.
+   */
+  private final ByteBuffer longitud = ByteBuffer.allocate(4);
+  
+  /**
+   * Vectors de valors reals del magatzem (veure <code>reals</code>).
+   */
+  private final double[][] vectors = new double[NOMBRE_REALS][];
+  
+  /**
+   * Crea un nou objecte per desar instantànies del joc donat.
+   * 
+   * @param joc Joc a desar.
+   */
+  public Instantanies(Joc joc) {
+    this.joc = joc;
+  }
+  
+  /**
+   * Desa una instantània completa del joc al canal donat.
+   * 
+   * @param canal Canal on escriure la instantània.
+   * @throws IOException si no es pot escriure.
+   */
+  public void desaCompleta(WritableByteChannel canal) throws IOException {
+    this.desa(canal, COMPLETA);
+  }
+  
+  /**
+   * Desa al canal donat una instantània amb només els actors que han
+   * canviat des de l'última instantània desada (completa o incremental).
+   * 
+   * @param canal Canal on escriure la instantània.
+   * @throws IOException si no es pot escriure.
+   * @throws IllegalStateException si encara no s'ha desat cap
+   * instantània completa.
+   */
+  public void desaIncremental(WritableByteChannel canal) throws IOException {
+    if (this.n < 0) {
+      throw new IllegalStateException("Cal desar abans una instantània completa");
+    }
+    this.desa(canal, INCREMENTAL);
+  }
+  
+  /**
+   * Prepara i escriu una instantània del tipus donat, i recorda els
+   * actors desats per a la següent.
+   */
+  private void desa(WritableByteChannel canal, int tipusInstantania) throws IOException {
+    final ActorStore s = this.joc.getStore();
+    final int len = s.n;
+    final ByteBuffer b = this.reserva(MIDA_MAXIMA_CAPCALERA + len * MIDA_MAXIMA_ACTOR);
+    b.clear();
+    b.putInt(0);
+    b.putInt(IDENTIFICADOR);
+    b.put((byte)VERSIO);
+    b.put((byte)tipusInstantania);
+    escriuCapcalera(b, this.joc);
+    
+    final double[][] r = this.reals(s);
+    escriuVarint(b, len);
+    int k = 0, anterior = 0;
+    for (int i=0; i<len; i++) {
+      final int id = s.id[i];
+      boolean canviat = true;
+      if (tipusInstantania == INCREMENTAL) {
+        while (k < this.n && this.ids[k] < id) {
+          k++;
+        }
+        canviat = k == this.n || this.ids[k] != id || this.haCanviat(s, r, i, k);
+      }
+      escriuVarint(b, ((long)(id - anterior) << 1) | (canviat ? 1 : 0));
+      anterior = id;
+      if (canviat) {
+        b.put(s.tipus[i]);
+        escriuVarint(b, s.capa[i]);
+        escriuVarint(b, s.mascara[i]);
+        escriuVarint(b, s.indicadors[i]);
+        for (int c=0; c<NOMBRE_REALS; c++) {
+          b.putDouble(r[c][i]);
+        }
+      }
+    }
+    b.putInt(0, b.position() - 4);
+    b.flip();
+    while (b.hasRemaining()) {
+      canal.write(b);
+    }
+    this.recorda(s, r);
+  }
+  
+  /**
+   * Escriu l'estat global del joc.
+   */
+  private static void escriuCapcalera(ByteBuffer b, Joc joc) {
+    final ActorStore s = joc.getStore();
+    b.putLong(joc.getLlavor());
+    escriuVarint(b, joc.getNombrePassos());
+    escriuVarint(b, joc.getEstat());
+    b.putLong(joc.getAleatori().getEstat());
+    escriuVarint(b, s.seguentId);
+    final Jugador j = joc.getJugador();
+    if (j == null || !j.isEnJoc()) {
+      escriuVarint(b, 0);
+    } else {
+      escriuVarint(b, 1 + s.id[j.index]);
+      b.put((byte)Enregistrador.entrada(j));
+      b.putLong(j.ultimTret);
+    }
+  }
+  
+  /**
+   * Indica si l'actor i-èssim del magatzem és diferent de l'actor
+   * k-èssim de l'última instantània.
+   */
+  private boolean haCanviat(ActorStore s, double[][] r, int i, int k) {
+    if (s.tipus[i] != this.tipus[k] || s.capa[i] != this.capa[k]
+        || s.mascara[i] != this.mascara[k] || s.indicadors[i] != this.indicadors[k]) {
+      return true;
+    }
+    for (int c=0; c<NOMBRE_REALS; c++) {
+      if (Double.doubleToLongBits(r[c][i]) != Double.doubleToLongBits(this.reals[c][k])) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Guarda una còpia dels actors del magatzem per comparar-los amb la
+   * següent instantània.
+   */
+  private void recorda(ActorStore s, double[][] r) {
+    final int len = s.n;
+    if (this.ids.length < len) {
+      final int cap = Math.max(len, this.ids.length*2);
+      this.ids = new int[cap];
+      this.tipus = new byte[cap];
+      this.capa = new int[cap];
+      this.mascara = new int[cap];
+      this.indicadors = new int[cap];
+      for (int c=0; c<NOMBRE_REALS; c++) {
+        this.reals[c] = new double[cap];
+      }
+    }
+    System.arraycopy(s.id, 0, this.ids, 0, len);
+    System.arraycopy(s.tipus, 0, this.tipus, 0, len);
+    System.arraycopy(s.capa, 0, this.capa, 0, len);
+    System.arraycopy(s.mascara, 0, this.mascara, 0, len);
+    System.arraycopy(s.indicadors, 0, this.indicadors, 0, len);
+    for (int c=0; c<NOMBRE_REALS; c++) {
+      System.arraycopy(r[c], 0, this.reals[c], 0, len);
+    }
+    this.n = len;
+  }
+  
+  /**
+   * Assegura que el buffer té, com a mínim, la capacitat donada.
+   */
+  private ByteBuffer reserva(int capacitat) {
+    if (this.buffer.capacity() < capacitat) {
+      this.buffer = ByteBuffer.allocateDirect(Math.max(capacitat, this.buffer.capacity()*2));
+    }
+    return this.buffer;
+  }
+  
+  /**
+   * Restaura un joc a partir de les instantànies del canal donat: una
+   * completa i totes les incrementals que la segueixin, fins al final
+   * del canal. El joc resultant no té renderitzador.
+   * 
+   * @param canal Canal d'on llegir les instantànies.
+   * @return joc restaurat.
+   * @throws IOException si no es pot llegir o el contingut no és vàlid.
+   */
+  public static Joc restaura(ReadableByteChannel canal) throws IOException {
+    final Instantanies ins = new Instantanies(null);
+    ByteBuffer b = ins.llegeix(canal);
+    if (b == null) {
+      throw new EOFException("No hi ha cap instantània");
+    }
+    if (b.get(b.position() + 5) != COMPLETA) {
+      throw new IOException("La primera instantània ha de ser completa");
+    }
+    ins.joc = new Joc(b.getLong(b.position() + 6));
+    do {
+      ins.aplica(b);
+    } while ((b = ins.llegeix(canal)) != null);
+    return ins.joc;
+  }
+  
+  /**
+   * Llegeix la següent instantània del canal donat i l'aplica al joc,
+   * que ha de ser el mateix (mateixa llavor) i ha d'estar en l'estat de
+   * la instantània anterior si aquesta és incremental. Els buffers es
+   * reaprofiten d'una crida a la següent.
+   * 
+   * @param canal Canal d'on llegir la instantània.
+   * @return <code>false</code> si el canal ja no tenia més instantànies.
+   * @throws IOException si no es pot llegir o el contingut no és vàlid.
+   */
+  public boolean aplica(ReadableByteChannel canal) throws IOException {
+    final ByteBuffer b = this.llegeix(canal);
+    if (b == null) {
+      return false;
+    }
+    this.aplica(b);
+    return true;
+  }
+  
+  /**
+   * Llegeix un registre sencer del canal al buffer, que només creix si
+   * el registre no hi cap.
+   * 
+   * @return buffer amb el contingut del registre, o <code>null</code>
+   * si el canal s'ha acabat.
+   */
+  private ByteBuffer llegeix(ReadableByteChannel canal) throws IOException {
+    final ByteBuffer longitud = this.longitud;
+    longitud.clear();
+    if (!llegeixTot(canal, longitud)) {
+      return null;
+    }
+    final int mida = longitud.getInt(0);
+    if (mida < 10) {
+      throw new IOException("Instantània massa curta: " + mida);
+    }
+    final ByteBuffer b = this.reserva(mida);
+    b.clear();
+    b.limit(mida);
+    if (!llegeixTot(canal, b)) {
+      throw new EOFException("Instantània incompleta");
+    }
+    b.flip();
+    return b;
+  }
+  
+  /**
+   * Omple el buffer des del canal.
+   * 
+   * @return <code>false</code> si el canal s'ha acabat abans de llegir
+   * res.
+   */
+  private static boolean llegeixTot(ReadableByteChannel canal, ByteBuffer b) throws IOException {
+    final int inici = b.position();
+    while (b.hasRemaining()) {
+      if (canal.read(b) < 0) {
+        if (b.position() == inici) {
+          return false;
+        }
+        throw new EOFException("Instantània incompleta");
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Aplica al joc la instantània continguda al buffer.
+   * 
+   * Els actors de la instantània estan ordenats per identificador igual
+   * que els del magatzem, així que es recorren tots dos alhora: els del
+   * magatzem que no hi són han sortit del joc, els que hi són es
+   * mantenen (i s'actualitzen si han canviat) i els que no existien
+   * (que sempre són al final) es creen de nou.
+   */
+  private void aplica(ByteBuffer b) throws IOException {
+    final Joc joc = this.joc;
+    if (b.getInt() != IDENTIFICADOR) {
+      throw new IOException("No és una instantània de joc");
+    }
+    final int versio = b.get() & 0xFF;
+    if (versio != VERSIO) {
+      throw new IOException("Versió d'instantània desconeguda: " + versio);
+    }
+    final int tipusInstantania = b.get();
+    if (tipusInstantania != COMPLETA && tipusInstantania != INCREMENTAL) {
+      throw new IOException("Tipus d'instantània desconegut: " + tipusInstantania);
+    }
+    if (b.getLong() != joc.getLlavor()) {
+      throw new IOException("La instantània és d'un altre joc");
+    }
+    joc.setNombrePassos(llegeixVarint(b));
+    joc.setAcabat((int)llegeixVarint(b));
+    joc.getAleatori().setLlavor(b.getLong());
+    final int seguentId = (int)llegeixVarint(b);
+    final int idJugador = (int)llegeixVarint(b) - 1;
+    int entrada = 0;
+    long ultimTret = 0;
+    if (idJugador >= 0) {
+      entrada = b.get();
+      ultimTret = b.getLong();
+    }
+    
+    final ActorStore s = joc.getStore();
+    final int anteriors = s.n;
+    final int len = (int)llegeixVarint(b);
+    int r = 0, w = 0, id = 0;
+    double[][] reals = this.reals(s);
+    Jugador jugador = null;
+    for (int e=0; e<len; e++) {
+      final long v = llegeixVarint(b);
+      id += (int)(v >>> 1);
+      final boolean canviat = (v & 1) != 0;
+      
+      // Els que tenen un identificador menor ja no hi són
+      while (r < anteriors && s.id[r] < id) {
+        s.vistes[r].index = -1;
+        s.vistes[r] = null;
+        r++;
+      }
+      
+      final int i;
+      if (r < anteriors && s.id[r] == id) {
+        i = w++;
+        mou(s, reals, r++, i);
+      } else {
+        if (!canviat) {
+          throw new IOException("Actor desconegut a la instantània: " + id);
+        }
+        if (s.n > w) {
+          tanca(s, r, anteriors, w);
+          r = anteriors;
+        }
+        i = crea(joc, b.get(b.position()));
+        reals = this.reals(s);
+        w++;
+        s.id[i] = id;
+      }
+      if (canviat) {
+        llegeixActor(b, s, reals, i);
+      }
+      if (id == idJugador) {
+        jugador = (Jugador)s.vistes[i];
+      }
+    }
+    if (s.n > w) {
+      tanca(s, r, anteriors, w);
+    }
+    s.seguentId = seguentId;
+    
+    if (jugador != null) {
+      jugador.esquerra = (entrada & Enregistrador.ESQUERRA) != 0;
+      jugador.dreta    = (entrada & Enregistrador.DRETA) != 0;
+      jugador.disparar = (entrada & Enregistrador.DISPARA) != 0;
+      jugador.ultimTret = ultimTret;
+    }
+    joc.setJugador(jugador);
+  }
+  
+  /**
+   * Mou l'actor de la posició r a la w (w &lt;= r).
+   */
+  private static void mou(ActorStore s, double[][] reals, int r, int w) {
+    if (r == w) {
+      return;
+    }
+    for (int c=0; c<NOMBRE_REALS; c++) {
+      reals[c][w] = reals[c][r];
+    }
+    s.tipus[w] = s.tipus[r];
+    s.capa[w] = s.capa[r];
+    s.mascara[w] = s.mascara[r];
+    s.indicadors[w] = s.indicadors[r];
+    s.id[w] = s.id[r];
+    s.vistes[w] = s.vistes[r];
+    s.vistes[w].index = w;
+    s.vistes[r] = null;
+  }
+  
+  /**
+   * Treu del joc els actors anteriors que queden des de la posició r, i
+   * deixa el magatzem amb w actors.
+   */
+  private static void tanca(ActorStore s, int r, int anteriors, int w) {
+    for (int k=r; k<anteriors; k++) {
+      s.vistes[k].index = -1;
+    }
+    Arrays.fill(s.vistes, w, s.n, null);
+    s.n = w;
+  }
+  
+  /**
+   * Crea un actor nou del tipus donat al final del magatzem (que pot
+   * fer créixer els seus vectors).
+   * 
+   * @return índex del nou actor.
+   */
+  private static int crea(Joc joc, byte tipus) throws IOException {
+    final Actor a;
+    switch (tipus) {
+    case ActorStore.JUGADOR: a = new Jugador(joc); break;
+    case ActorStore.INVASOR: a = new Invasor(joc, 0); break;
+    case ActorStore.TRET:    a = new Tret(joc, Tret.TRET_JUGADOR); break;
+    default: throw new IOException("Tipus d'actor desconegut: " + tipus);
+    }
+    return a.index;
+  }
+  
+  /**
+   * Llegeix tots els valors d'un actor i els posa a la posició i.
+   */
+  private static void llegeixActor(ByteBuffer b, ActorStore s, double[][] r, int i) {
+    s.tipus[i] = b.get();
+    s.capa[i] = (int)llegeixVarint(b);
+    s.mascara[i] = (int)llegeixVarint(b);
+    s.indicadors[i] = (int)llegeixVarint(b);
+    for (int c=0; c<NOMBRE_REALS; c++) {
+      r[c][i] = b.getDouble();
+    }
+  }
+  
+  /**
+   * Vectors de valors reals dels actors del magatzem, en l'ordre en què
+   * es desen. S'han de tornar a obtenir si el magatzem creix.
+   */
+  private double[][] reals(ActorStore s) {
+    final double[][] r = this.vectors;
+    r[0] = s.x;         r[1] = s.y;
+    r[2] = s.xAnterior; r[3] = s.yAnterior;
+    r[4] = s.vx;        r[5] = s.vy;
+    r[6] = s.amplada;   r[7] = s.alcada;
+    r[8] = s.xInicial;  r[9] = s.desviacio;
+    return r;
+  }
+  
+  /**
+   * Escriu un enter no negatiu amb 7 bits per byte.
+   */
+  private static void escriuVarint(ByteBuffer b, long v) {
+    while ((v & ~0x7FL) != 0) {
+      b.put((byte)((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    b.put((byte)v);
+  }
+  
+  /**
+   * Llegeix un enter escrit amb <code>escriuVarint</code>.
+   */
+  private static long llegeixVarint(ByteBuffer b) {
+    long v = 0;
+    for (int desp=0; ; desp+=7) {
+      final int c = b.get();
+      v |= (long)(c & 0x7F) << desp;
+      if ((c & 0x80) == 0) {
+        return v;
+      }
+    }
+  }
+  
+}
@@ -29,10 +29,7 @@
 
 package es.uab.pa.invaders;
 
-import java.awt.geom.Area;
-import java.awt.geom.Ellipse2D;
-
-import es.uab.pa.invaders.worldview.WPoint;
+import es.uab.pa.invaders.worldview.WRectangle;
 
 /**
  * Classe que representa a un invasor de l'espai.
@@ -51,17 +48,6 @@ public class Invasor extends Actor {
    */
   public static int HEIGHT = 42;
   
-  /**
-   * Desviació lateral màxima de l'invasor.
-   */
-  private double xMaxDesviacio;
-  
-  /**
-   * Posició "x" inicial (per controlar la desviació
-   * màxima).
-   */
-  private double xInicial;
-
   /**
    * Crea un nou invasor per al joc indicat.
    * 
@@ -70,30 +56,36 @@ public class Invasor extends Actor {
    * respecte el punt "x" inicial.
    */
   public Invasor(Joc joc, double xMaxDesviacio) {
-    super(joc);
-    this.xMaxDesviacio = xMaxDesviacio;
+    super(joc, ActorStore.INVASOR, WIDTH, HEIGHT, CAPA_INVASOR, CAPA_JUGADOR | CAPA_TRET_JUGADOR);
+    this.store.desviacio[this.index] = xMaxDesviacio;
   }
   
   /**
-   * Avança "un pas" l'invasor.
-   */
-  @Override public void moure() {
-    super.moure();
-    if (this.posicio.x <= xInicial - xMaxDesviacio) {
-      this.velocity.x *= -1;
-    } else if (this.posicio.x >= xInicial + xMaxDesviacio) {
-      this.velocity.x *= -1;
+   * Comportament d'un invasor després d'integrar-ne la posició:
+   * rebota en arribar a la desviació màxima, acaba el joc si arriba
+   * a baix de tot i, de tant en tant, dispara.
+   * 
+   * @param e Efectes on guardar els canvis al joc.
+   * @param a Generador aleatori per decidir si dispara.
+   * @param s Magatzem on es troba l'invasor.
+   * @param i Índex de l'invasor dins el magatzem.
+   */
+  static void comportament(EfectesMoviment e, Aleatori a, ActorStore s, int i) {
+    final double x = s.x[i];
+    if (x <= s.xInicial[i] - s.desviacio[i]) {
+      s.vx[i] *= -1;
+    } else if (x >= s.xInicial[i] + s.desviacio[i]) {
+      s.vx[i] *= -1;
     }
     
-    if (this.posicio.y >= Joc.HEIGHT - HEIGHT) {
-      this.joc.setAcabat(Joc.JOC_PERDUT);
+    if (s.y[i] >= Joc.HEIGHT - HEIGHT) {
+      e.acaba(Joc.JOC_PERDUT);
     }
     
-    if (Math.random() > 0.998) {
-      final Tret t = new Tret(joc, Tret.TRET_INVASOR);
-      t.setPosicio(this.posicio.x + WIDTH/2 - Tret.WIDTH/2, this.posicio.y + HEIGHT);
-      t.setVelocity(0, 1 + Math.random());
-      joc.afegirActor(t);
+    if (a.nextDouble() > 0.998) {
+      e.creaTret(Tret.TRET_INVASOR,
+          s.x[i] + WIDTH/2 - Tret.WIDTH/2, s.y[i] + HEIGHT,
+          0, 1 + a.nextDouble());
     }
   }
   
@@ -103,12 +95,6 @@ public class Invasor extends Actor {
    * @param a Actor amb el que s'ha produït la col·lisió.
    */
   public void colisiona(Actor a) {
-    
-    // Els trets d'invasor no maten als invasors
-    if (a instanceof Tret && ((Tret)a).getTipus() == Tret.TRET_INVASOR) {
-      return;
-    }
-    
     this.setPerEsborrar(true);
   }
 
@@ -145,27 +131,9 @@ public class Invasor extends Actor {
    */
   @Override public void setPosicio(double x, double y) {
     super.setPosicio(x, y);
-    this.xInicial = x;
+    this.store.xInicial[this.index] = x;
   }
 
-  /**
-   * Canvia la posició d'aquest invasor.
-   * 
-   * @param posicio Nova posició d'aquest invasor.
-   */
-  @Override public void setPosicio(WPoint posicio) {
-    super.setPosicio(posicio);
-    this.xInicial = posicio.x;
-  }
-
-  /**
-   * Retorna el perfil d'un invasor en forma d'àrea, per realitzar
-   * la detecció de col·lisions.
-   */
-  public Area getCurrentArea() {
-    return new Area(new Ellipse2D.Double(posicio.x, posicio.y, WIDTH, HEIGHT));
-  }
-  
   /**
    * Comprova si s'ha efectuat una col·lisió amb el jugador donat.
    * 
@@ -174,11 +142,9 @@ public class Invasor extends Actor {
    * aquest jugador, <code>false</code> sinó.
    */
   public boolean hasColisio(Jugador jugador){
-    if (this.getBox().intersects(jugador.getBox())) {
-        Area a = new Area(this.getArea());
-        Area b = jugador.getArea();
-        a.intersect(b);
-        return !a.isEmpty();
+    if (WRectangle.intersects(this.getX(), this.getY(), WIDTH, HEIGHT,
+        jugador.getX(), jugador.getY(), Jugador.WIDTH, Jugador.HEIGHT)) {
+        return jugador.intersectaElipse(this.getX(), this.getY(), WIDTH, HEIGHT);
     }
     return false;
   }
@@ -191,11 +157,12 @@ public class Invasor extends Actor {
    * aquest tret, <code>false</code> sinó.
    */
   public boolean hasColisio(Tret tret){
-    if (   tret.posicio.y >= this.posicio.y && tret.posicio.y <= this.posicio.y + HEIGHT
-       &&  tret.posicio.x >= this.posicio.x && tret.posicio.x <= this.posicio.x + WIDTH)
+    final double tx = tret.getX(), ty = tret.getY();
+    final double x = this.getX(), y = this.getY();
+    if (   ty >= y && ty <= y + HEIGHT
+       &&  tx >= x && tx <= x + WIDTH)
     {
-      Area a = this.getArea();
-      return a.contains(tret.posicio.x, tret.posicio.y);
+      return Formes.elipseContePunt(x, y, WIDTH, HEIGHT, tx, ty);
     }
     return false;
   }
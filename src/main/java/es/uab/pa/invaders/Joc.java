@@ -29,29 +29,37 @@
 
 package es.uab.pa.invaders;
 
-import java.awt.Font;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.Point;
-import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
-import java.util.ArrayList;
-
-import es.uab.pa.invaders.worldview.World;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Classe que representa el propi joc, l'inicia, l'atura
  * i coordina els moviments de tots els actors implicats.
  * 
+ * El joc no depèn de cap finestra: la simulació avança amb
+ * <code>pas()</code>, i si hi ha un <code>Renderitzador</code>
+ * associat se li demana que la mostri després de cada pas.
+ * 
  * @author Marc Pujol <marc@la3.org>
  */
 public class Joc implements Runnable {
   
   /**
-   * Ajust (invers) de velocitat del joc.
+   * Passos de simulació per segon per defecte.
+   */
+  public static int PASSOS_PER_SEGON = 80;
+  
+  /**
+   * Frames per segon que es mostren per defecte (com a màxim).
+   */
+  public static int FPS = 60;
+  
+  /**
+   * Nombre màxim de passos per defecte que es fan seguits per
+   * recuperar el retard abans de tornar a mostrar el joc.
    */
-  private static int FPS = 80;
+  public static int MAX_PASSOS_RECUPERACIO = 5;
   
   /**
    * Amplada del món.
@@ -79,24 +87,141 @@ public class Joc implements Runnable {
   public static int JOC_PERDUT = 2;
   
   /**
-   * Finestra on es mostra el joc.
+   * Mida per defecte (en dimensions món) de les cel·les de la
+   * graella de col·lisions.
+   */
+  public static double MIDA_CELLA = 64;
+  
+  /**
+   * Capacitat per defecte de la reserva de trets.
+   */
+  public static int MIDA_POOL_TRETS = 256;
+  
+  /**
+   * Indica si per defecte les col·lisions es comproven amb les
+   * màscares de bits de les imatges dels actors, en comptes de les
+   * seves formes geomètriques.
    */
-  private Finestra finestra;
+  public static boolean COLISIONS_PER_MASCARA = false;
   
   /**
-   * Llista d'actors que estan intervenint en el joc.
+   * Indica si per defecte les col·lisions dels trets es comproven al
+   * llarg de tot el seu recorregut durant el pas, i es resolen per ordre
+   * d'impacte.
    */
-  private ArrayList<Actor> actors;
+  public static boolean COLISIONS_CONTINUES = false;
   
   /**
-   * Cache/Generador d'imatges.
+   * Nombre d'actors per defecte a partir del qual els moviments es fan
+   * en paral·lel. Un valor no positiu ho desactiva.
    */
-  private CacheImatges cacheImatges;
+  public static int LLINDAR_MOVIMENT_PARALLEL = 8192;
   
   /**
-   * Frames per segon.
+   * Nombre de parelles candidates per defecte a partir del qual la
+   * comprovació de col·lisions es fa en paral·lel. Un valor no positiu
+   * ho desactiva.
    */
-  private int fps = 0;
+  public static int LLINDAR_COLISIONS_PARALLEL = 4096;
+  
+  /**
+   * Mínim de parelles de cada tros en què es divideix la comprovació
+   * de col·lisions en paral·lel.
+   */
+  private static final int MIDA_MINIMA_TROS_COLISIONS = 1024;
+  
+  /**
+   * Nombre de fils que fan servir els jocs per a les fases en paral·lel.
+   */
+  public static int FILS = Runtime.getRuntime().availableProcessors();
+  
+  /**
+   * Reserva de fils compartida per tots els jocs, creada la primera
+   * vegada que cal.
+   */
+  private static ForkJoinPool pool;
+  
+  /**
+   * Renderitzador que mostra el joc (o <code>null</code> si el joc
+   * corre sense mostrar-se enlloc).
+   */
+  private Renderitzador renderitzador;
+  
+  /**
+   * Magatzem amb l'estat dels actors que estan intervenint en el joc.
+   */
+  private final ActorStore store = new ActorStore();
+  
+  /**
+   * Perfilador on es mesura la durada de cada fase.
+   */
+  private Perfilador perfilador = new Perfilador();
+  
+  /**
+   * Llavor de la qual surten tots els números aleatoris del joc.
+   */
+  private long llavor;
+  
+  /**
+   * Generador aleatori del joc, per a l'atzar fora del moviment.
+   */
+  private final Aleatori aleatori;
+  
+  /**
+   * Nombre de passos simulats des de l'inici del joc.
+   */
+  private long nombrePassos;
+  
+  /**
+   * Enregistrador de les entrades del jugador, o <code>null</code> si
+   * no s'enregistren.
+   */
+  private Enregistrador enregistrador;
+  
+  /**
+   * Ordres enviades al joc des d'altres fils, pendents d'executar.
+   */
+  private final CuaOrdres ordres = new CuaOrdres();
+  
+  /**
+   * Jugador d'aquest joc.
+   */
+  private Jugador jugador;
+  
+  /**
+   * Nombre d'invasors que quedaven en acabar l'últim pas.
+   */
+  private int nombreInvasors;
+  
+  /**
+   * Frames per segon mostrats, mesurats durant l'últim segon.
+   */
+  private double fps = 0;
+  
+  /**
+   * Passos de simulació per segon, mesurats durant l'últim segon.
+   */
+  private double pps = 0;
+  
+  /**
+   * Passos de simulació per segon que s'intenten fer.
+   */
+  private int passosPerSegon = PASSOS_PER_SEGON;
+  
+  /**
+   * Frames per segon que s'intenten mostrar.
+   */
+  private int fpsObjectiu = FPS;
+  
+  /**
+   * Nombre màxim de passos seguits per recuperar el retard.
+   */
+  private int maxPassosRecuperacio = MAX_PASSOS_RECUPERACIO;
+  
+  /**
+   * Marcapassos que regula les esperes del bucle principal.
+   */
+  private Marcapas marcapas = new Marcapas();
   
   /**
    * Estat actual del joc.
@@ -104,28 +229,155 @@ public class Joc implements Runnable {
   private int estat;
   
   /**
-   * Conversor mon-pantalla i pantalla-món
+   * Indica si el joc ha de córrer tan ràpid com pugui, sense
+   * esperar entre passos.
+   */
+  private boolean senseEspera = false;
+  
+  /**
+   * Mida de les cel·les de la graella de col·lisions. Si no és
+   * positiva, es comproven totes les parelles d'actors.
+   */
+  private double midaCella = MIDA_CELLA;
+  
+  /**
+   * Graella on es reparteixen els actors per trobar les parelles
+   * que poden col·lisionar.
+   */
+  private Graella graella;
+  
+  /**
+   * Reserva de trets fora de joc per reaprofitar.
+   */
+  private PoolTrets poolTrets = new PoolTrets(MIDA_POOL_TRETS);
+  
+  /**
+   * Indica si les col·lisions es comproven amb màscares de bits.
+   */
+  private boolean colisionsPerMascara = COLISIONS_PER_MASCARA;
+  
+  /**
+   * Màscara de col·lisió de cada tipus d'actor, obtingudes de
+   * <code>CacheImatges</code> la primera vegada que calen.
+   */
+  private final MascaraColisio[] mascares = new MascaraColisio[ActorStore.NOMBRE_TIPUS];
+  
+  /**
+   * Generació (veure <code>GeneracioMascares</code>) a la que
+   * corresponen les màscares guardades.
    */
-  private World mon;
+  private int generacioMascares;
   
   /**
-   * Constructor per defecte, que llença un nou joc en la
-   * finestra donada.
+   * Indica si les col·lisions dels trets es comproven al llarg del seu
+   * recorregut.
+   */
+  private boolean colisionsContinues = COLISIONS_CONTINUES;
+  
+  /**
+   * Nombre d'actors a partir del qual els moviments es fan en paral·lel.
+   */
+  private int llindarMovimentParallel = LLINDAR_MOVIMENT_PARALLEL;
+  
+  /**
+   * Nombre de parelles candidates a partir del qual les col·lisions es
+   * comproven en paral·lel.
+   */
+  private int llindarColisionsParallel = LLINDAR_COLISIONS_PARALLEL;
+  
+  /**
+   * Col·lisions trobades durant el pas actual, i les trobades per cada
+   * tros quan es comproven en paral·lel.
+   */
+  private final Impactes impactes = new Impactes();
+  private Impactes[] impactesTrossos = new Impactes[0];
+  
+  /**
+   * Feina de la comprovació en paral·lel en curs: parelles a comprovar
+   * (o <code>null</code> si es comproven totes), límits de cada tros i
+   * nombre de trossos. Les tasques es reaprofiten d'un pas a l'altre, i
+   * només se'n creen de noves quan calen més trossos.
+   */
+  private long[] parellesTrossos;
+  private int[] limitsTrossos = new int[1];
+  private int nombreTrossos;
+  private ProvaTrossos[] tasquesTrossos = new ProvaTrossos[0];
+  private final ProvaTrossos arrelTrossos = new ProvaTrossos(this, -1);
+  
+  /**
+   * Claus per ordenar els impactes (instant i ordre d'arribada), i
+   * instant en què ha col·lisionat per primer cop cada actor.
+   */
+  private long[] ordreImpactes = new long[16];
+  private float[] primerImpacte = new float[0];
+  
+  /**
+   * Construeix un joc que no es mostra enlloc, amb una llavor
+   * aleatòria.
+   */
+  public Joc() {
+    this(null);
+  }
+  
+  /**
+   * Construeix un joc que no es mostra enlloc, amb la llavor donada.
+   * Dos jocs amb la mateixa llavor i les mateixes ordres evolucionen
+   * igual.
+   * 
+   * @param llavor Llavor dels números aleatoris del joc.
+   */
+  public Joc(long llavor) {
+    this(null, llavor);
+  }
+  
+  /**
+   * Construeix un joc que es mostrarà amb el renderitzador donat, amb
+   * una llavor aleatòria.
    * 
-   * @param f Finestra on s'ha de mostrar el joc.
+   * @param r Renderitzador que mostrarà el joc, o <code>null</code>
+   * per no mostrar-lo.
    */
-  public Joc(Finestra f) {
-    this.finestra = f;
-    this.mon = f.getMon();
+  public Joc(Renderitzador r) {
+    this(r, Aleatori.novaLlavor());
+  }
+  
+  /**
+   * Construeix un joc que es mostrarà amb el renderitzador donat, amb
+   * la llavor donada.
+   * 
+   * @param r Renderitzador que mostrarà el joc, o <code>null</code>
+   * per no mostrar-lo.
+   * @param llavor Llavor dels números aleatoris del joc.
+   */
+  public Joc(Renderitzador r, long llavor) {
+    this.renderitzador = r;
+    this.llavor = llavor;
+    this.aleatori = new Aleatori(llavor);
   }
 
   /**
-   * Inicialitza el joc.
+   * Inicialitza el joc amb una llavor nova (per exemple, per començar
+   * una altra partida reaprofitant el mateix joc).
+   * 
+   * @param llavor Nova llavor dels números aleatoris del joc.
    */
-  private void inici() {
+  public void inici(long llavor) {
+    this.llavor = llavor;
+    this.inici();
+  }
+  
+  /**
+   * Inicialitza el joc amb l'onada inicial d'invasors i el jugador. Si
+   * el joc ja s'havia fet servir, els trets que quedaven tornen a la
+   * reserva i les ordres pendents, que eren per la partida anterior,
+   * es descarten.
+   */
+  public void inici() {
     this.estat = JOC_EN_CURS;
-    this.cacheImatges = new CacheImatges(this);
-    this.actors = new ArrayList<Actor>();
+    this.ordres.descarta();
+    this.store.buida(this.poolTrets);
+    this.aleatori.setLlavor(this.llavor);
+    this.nombrePassos = 0;
     
     // Variables últils per afegir actors
     final int n_invasors = 10;
@@ -140,182 +392,508 @@ public class Joc implements Runnable {
         Invasor inv = new Invasor(this, xinc*2);
         inv.setPosicio(xbase, ypos);
         inv.setVelocity(1, 0.08);
-        this.actors.add(inv);
         xbase += xinc;
       }
       ypos += Invasor.HEIGHT*1.5;
     }
     
     // Jugador
-    Jugador jugador = new Jugador(this);
-    jugador.setPosicio(WIDTH/2 - Jugador.WIDTH/2, HEIGHT - Jugador.HEIGHT);
-    this.finestra.addKeyListener(jugador);
-    this.actors.add(jugador);
+    this.jugador = new Jugador(this);
+    this.jugador.setPosicio(WIDTH/2 - Jugador.WIDTH/2, HEIGHT - Jugador.HEIGHT);
+    this.nombreInvasors = n_invasors * n_files;
   }
   
   /**
-   * Realitza els moviments de tots els actors del joc.
+   * Avança un pas la simulació: ordres pendents, moviments, col·lisions
+   * i neteja.
    */
-  private void moviments() {
-    int len = this.actors.size()-1;
-    for (int i=len; i>=0; i--) {
-      this.actors.get(i).moure();
+  public void pas() {
+    final Perfilador p = this.perfilador;
+    final long inici = p.inici();
+    this.ordres.executa(this);
+    if (this.enregistrador != null) {
+      this.enregistrador.registra(this.jugador);
     }
+    this.moviments();
+    long t = p.registra(Perfilador.MOVIMENTS, inici);
+    this.colisions();
+    t = p.registra(Perfilador.COLISIONS, t);
+    this.netejar();
+    t = p.registra(Perfilador.NETEJA, t);
+    if (inici != 0) {
+      p.registraDurada(Perfilador.PAS, t - inici);
+    }
+    this.nombrePassos++;
+  }
+  
+  /**
+   * Realitza els moviments de tots els actors del joc.
+   */
+  void moviments() {
+    this.store.mou(this);
   }
   
   /**
    * Comprova les possibles col·lisions entre actors, desencadenant
-   * el que sigui convenient.
+   * el que sigui convenient. Només es comproven les parelles que
+   * comparteixen alguna cel·la de la graella.
+   * 
+   * Primer es busquen totes les col·lisions (en paral·lel si hi ha
+   * prou parelles) i després s'apliquen des d'aquest fil en un ordre
+   * fix, de manera que el resultat no depèn del nombre de fils.
    */
-  private void colisions() {
-    final int len = this.actors.size();
-    for (int i=0; i<len-1; i++) {
-      final Actor a1 = this.actors.get(i);
-      for (int j=i+1; j<len; j++) {
-
-        final Actor a2 = this.actors.get(j);
-        if (a1.hasColisio(a2)){ 
-          a1.colisiona(a2);
-          a2.colisiona(a1);
-        }
-        
+  void colisions() {
+    // Els fils només llegeixen les màscares, i per això es descarten aquí
+    if (this.colisionsPerMascara) {
+      final int generacio = GeneracioMascares.get();
+      if (generacio != this.generacioMascares) {
+        Arrays.fill(this.mascares, null);
+        this.generacioMascares = generacio;
       }
     }
+    
+    if (this.midaCella <= 0) {
+      this.colisionsTotes();
+      return;
+    }
+    
+    if (this.graella == null || this.graella.getMidaCella() != this.midaCella) {
+      this.graella = new Graella(this.midaCella, WIDTH, HEIGHT);
+    }
+    this.graella.construeix(this.store, this.colisionsContinues);
+    final int n = this.graella.cercaParelles();
+    final long[] parelles = this.graella.getParelles();
+    this.impactes.buida();
+    if (this.llindarColisionsParallel > 0 && n >= this.llindarColisionsParallel) {
+      final int trossos = this.trossosColisions(n);
+      final int[] limits = this.reservaTrossos(trossos);
+      for (int t=0; t<=trossos; t++) {
+        limits[t] = (int)((long)n * t / trossos);
+      }
+      this.colisionsParallel(parelles, trossos);
+    } else {
+      for (int k=0; k<n; k++) {
+        this.prova((int)(parelles[k] >>> 32), (int)parelles[k], this.impactes);
+      }
+    }
+    this.aplicaImpactes();
   }
   
   /**
-   * "Neteja" el joc, eliminant els actors pendents d'esborrar
-   * (perquè han desaparegut i/o mort) i comprovem que quedi
-   * almenys un invasor i el jugador, o el donem per acabat.
+   * Comprova les col·lisions entre totes les parelles d'actors, sense
+   * fer servir la graella.
    */
-  private void netejar() {
-    final int max = this.actors.size()-1;
-    int n_invasors = 0;
-    for (int i=max; i>=0; i--) {
-      final Actor a = this.actors.get(i);
-      if (a.isPerEsborrar()) {
-        this.actors.remove(i);
-        if (a instanceof Jugador) {
-          this.estat = JOC_PERDUT;
+  private void colisionsTotes() {
+    final int len = this.store.size();
+    final long n = (long)len * (len-1) / 2;
+    this.impactes.buida();
+    if (this.llindarColisionsParallel > 0 && n >= this.llindarColisionsParallel) {
+      // Repartim les files de manera que cada tros tingui un nombre
+      // semblant de parelles
+      final int trossos = this.trossosColisions(n);
+      final int[] limits = this.reservaTrossos(trossos);
+      limits[0] = 0;
+      long acumulat = 0;
+      int t = 1;
+      for (int i=0; i<len && t<trossos; i++) {
+        acumulat += len-1-i;
+        if (acumulat >= n * t / trossos) {
+          limits[t++] = i+1;
         }
-      } else if (a instanceof Invasor) {
-        n_invasors++;
+      }
+      for (; t<=trossos; t++) {
+        limits[t] = len;
+      }
+      this.colisionsParallel(null, trossos);
+    } else {
+      for (int i=0; i<len-1; i++) {
+        for (int j=i+1; j<len; j++) {
+          this.prova(i, j, this.impactes);
+        }
+      }
+    }
+    this.aplicaImpactes();
+  }
+  
+  /**
+   * Nombre de trossos en què es divideix la comprovació en paral·lel de
+   * les n parelles donades.
+   */
+  private int trossosColisions(long n) {
+    final long t = Math.min(4 * getPool().getParallelism(), n / MIDA_MINIMA_TROS_COLISIONS);
+    return (int)Math.max(1, t);
+  }
+  
+  /**
+   * Assegura que hi ha límits, tasques i impactes per al nombre de
+   * trossos donat.
+   * 
+   * @return vector on escriure els límits dels trossos.
+   */
+  private int[] reservaTrossos(int trossos) {
+    if (this.limitsTrossos.length < trossos+1) {
+      this.limitsTrossos = new int[trossos+1];
+    }
+    if (this.tasquesTrossos.length < trossos) {
+      final ProvaTrossos[] ts = Arrays.copyOf(this.tasquesTrossos, trossos);
+      final Impactes[] is = Arrays.copyOf(this.impactesTrossos, trossos);
+      for (int t=this.tasquesTrossos.length; t<trossos; t++) {
+        ts[t] = new ProvaTrossos(this, t);
+        is[t] = new Impactes();
+      }
+      this.tasquesTrossos = ts;
+      this.impactesTrossos = is;
+    }
+    return this.limitsTrossos;
+  }
+  
+  /**
+   * Comprova les col·lisions en paral·lel. Cada tros t comprova les
+   * parelles [limits[t], limits[t+1]) de la llista donada o, si no
+   * n'hi ha, les parelles dels actors de les files [limits[t],
+   * limits[t+1]) amb tots els següents. Els impactes de cada tros
+   * s'afegeixen després, en ordre, als del joc.
+   */
+  private void colisionsParallel(long[] parelles, int trossos) {
+    // Les màscares es carreguen abans, perquè els fils només llegeixin
+    if (this.colisionsPerMascara) {
+      for (int tipus=0; tipus<ActorStore.NOMBRE_TIPUS; tipus++) {
+        this.getMascara(tipus);
       }
     }
     
-    // Mirem si no queden invasors -> Jugador ha guanyat!
-    if (n_invasors == 0) {
-      this.estat = JOC_GUANYAT;
+    this.parellesTrossos = parelles;
+    this.nombreTrossos = trossos;
+    this.arrelTrossos.reinitialize();
+    for (int t=0; t<trossos; t++) {
+      this.tasquesTrossos[t].reinitialize();
+    }
+    getPool().invoke(this.arrelTrossos);
+    for (int t=0; t<trossos; t++) {
+      this.impactes.afegeixTots(this.impactesTrossos[t]);
     }
   }
-
+  
   /**
-   * Redibuixa l'estat del joc a la imatge que fa de
-   * <em>buffer offscreen</em>.
+   * Comprova les col·lisions del tros t o, si és l'arrel (t = -1),
+   * llança les tasques de tots els trossos.
    */
-  private void repintar() {
-    Image buffer = finestra.getBuffer();
+  private static class ProvaTrossos extends RecursiveAction {
     
-    // Joc i gui corren en threads diferents, així que hem
-    // de controlar l'accés al buffer.
-    synchronized(buffer) {
-      Graphics g = buffer.getGraphics();
-      g.setColor(Colors.FONS);
-      g.fillRect(0, 0, buffer.getWidth(null), buffer.getHeight(null));
-      
-      synchronized(this.actors) {
-        // Ho recorrem invers perquè surtin els trets a sobre tot
-        // lo altre
-        final int len = this.actors.size()-1;
-        for(int i=len; i>=0; i--) {
-          this.pinta(g, this.actors.get(i));
+    private static final long serialVersionUID = 1L;
+    
+    private final Joc joc;
+    private final int t;
+    
+    ProvaTrossos(Joc joc, int t) {
+      this.joc = joc;
+      this.t = t;
+    }
+    
+    @Override
+    protected void compute() {
+      final Joc joc = this.joc;
+      if (this.t < 0) {
+        final ProvaTrossos[] ts = joc.tasquesTrossos;
+        final int trossos = joc.nombreTrossos;
+        for (int k=1; k<trossos; k++) {
+          ts[k].fork();
+        }
+        ts[0].invoke();
+        for (int k=trossos-1; k>0; k--) {
+          ts[k].join();
         }
+        return;
       }
       
-      // Mostrar fps
-      g.setColor(Colors.JUGADOR_TRAS);
-      g.drawString(this.fps + " fps", 0, 50);
+      final Impactes out = joc.impactesTrossos[this.t];
+      out.buida();
+      final long[] parelles = joc.parellesTrossos;
+      final int k0 = joc.limitsTrossos[this.t], k1 = joc.limitsTrossos[this.t+1];
+      if (parelles != null) {
+        for (int k=k0; k<k1; k++) {
+          joc.prova((int)(parelles[k] >>> 32), (int)parelles[k], out);
+        }
+      } else {
+        final int len = joc.store.size();
+        for (int i=k0; i<k1; i++) {
+          for (int j=i+1; j<len; j++) {
+            joc.prova(i, j, out);
+          }
+        }
+      }
+    }
+    
+  }
+  
+  /**
+   * Comprova si els actors i i j (i &lt; j) col·lisionen i, si és així,
+   * ho apunta a la llista donada: en mode continu amb el seu instant
+   * d'impacte, i si no amb instant 1 (final del pas). Només llegeix
+   * l'estat dels actors, així que es pot cridar des de diversos fils.
+   */
+  private void prova(int i, int j, Impactes out) {
+    final Actor a1 = this.store.get(i);
+    final Actor a2 = this.store.get(j);
+    if (!this.colisionsContinues) {
+      if (this.hasColisio(a1, a2)) {
+        out.afegeix(i, j, 1);
+      }
+      return;
+    }
+    
+    final double t = (a1 instanceof Tret || a2 instanceof Tret)
+        ? a1.tempsImpacte(a2)
+        : (this.hasColisio(a1, a2) ? 1 : Formes.SENSE_IMPACTE);
+    if (t >= 0) {
+      out.afegeix(i, j, (float)t);
+    }
+  }
+  
+  /**
+   * Aplica les col·lisions trobades durant el pas. En mode continu es
+   * resolen per ordre d'impacte; si no, per ordre de parella, igual que
+   * si s'haguessin anat aplicant a mesura que es trobaven.
+   */
+  private void aplicaImpactes() {
+    if (this.colisionsContinues) {
+      this.resolImpactes();
+      return;
+    }
+    final Impactes im = this.impactes;
+    Arrays.sort(im.parelles, 0, im.n);
+    for (int k=0; k<im.n; k++) {
+      final Actor a1 = this.store.get((int)(im.parelles[k] >>> 32));
+      final Actor a2 = this.store.get((int)im.parelles[k]);
+      a1.colisiona(a2);
+      a2.colisiona(a1);
+    }
+  }
+  
+  /**
+   * Comprova si dos actors col·lisionen, segons les seves formes o bé
+   * segons les màscares de les seves imatges.
+   */
+  boolean hasColisio(Actor a1, Actor a2) {
+    if (!this.colisionsPerMascara) {
+      return a1.hasColisio(a2);
+    }
+    if (!a1.potColisionar(a2)) {
+      return false;
+    }
+    final MascaraColisio m1 = this.getMascara(a1);
+    final MascaraColisio m2 = this.getMascara(a2);
+    if (m1 == null || m2 == null) {
+      return a1.hasColisio(a2);
+    }
+    final double r = m1.getResolucio();
+    final int dx = (int)Math.floor(a2.getX()*r) - (int)Math.floor(a1.getX()*r);
+    final int dy = (int)Math.floor(a2.getY()*r) - (int)Math.floor(a1.getY()*r);
+    return m1.solapa(m2, dx, dy);
+  }
+  
+  /**
+   * Aplica els impactes apuntats per ordre d'instant (i, a igual
+   * instant, per ordre de parella). Un actor que ja ha col·lisionat
+   * abans durant el pas ja no pot col·lisionar amb cap altre, de manera
+   * que un tret només toca el primer actor que troba pel camí.
+   */
+  private void resolImpactes() {
+    final Impactes im = this.impactes;
+    final int n = im.n;
+    if (this.ordreImpactes.length < n) {
+      this.ordreImpactes = new long[Math.max(n, this.ordreImpactes.length*2)];
+    }
+    for (int h=0; h<n; h++) {
+      // Els float positius s'ordenen igual que els seus bits
+      this.ordreImpactes[h] = ((long)Float.floatToIntBits(im.temps[h]) << 32) | h;
+    }
+    Arrays.sort(this.ordreImpactes, 0, n);
+    
+    final int len = this.store.size();
+    if (this.primerImpacte.length < len) {
+      this.primerImpacte = new float[Math.max(len, this.primerImpacte.length*2)];
+    }
+    Arrays.fill(this.primerImpacte, 0, len, Float.POSITIVE_INFINITY);
+    
+    for (int k=0; k<n; k++) {
+      final int h = (int)this.ordreImpactes[k];
+      final float t = im.temps[h];
+      final int i = (int)(im.parelles[h] >>> 32);
+      final int j = (int)im.parelles[h];
+      if (this.primerImpacte[i] < t || this.primerImpacte[j] < t) {
+        continue;
+      }
+      this.primerImpacte[i] = t;
+      this.primerImpacte[j] = t;
+      final Actor a1 = this.store.get(i);
+      final Actor a2 = this.store.get(j);
+      a1.colisiona(a2);
+      a2.colisiona(a1);
+    }
+  }
+  
+  /**
+   * Retorna la màscara de col·lisió de l'actor donat.
+   */
+  private MascaraColisio getMascara(Actor a) {
+    return this.getMascara(this.store.tipus[a.index]);
+  }
+  
+  /**
+   * Retorna la màscara de col·lisió dels actors del tipus donat.
+   */
+  private MascaraColisio getMascara(int tipus) {
+    MascaraColisio m = this.mascares[tipus];
+    if (m == null || m.getResolucio() != CacheImatges.RESOLUCIO_MASCARES) {
+      m = CacheImatges.getMascara(tipus);
+      this.mascares[tipus] = m;
+    }
+    return m;
+  }
+  
+  /**
+   * "Neteja" el joc, eliminant els actors pendents d'esborrar
+   * (perquè han desaparegut i/o mort) i comprovem que quedi
+   * almenys un invasor i el jugador, o el donem per acabat.
+   */
+  void netejar() {
+    final int n_invasors = this.store.neteja(this, this.poolTrets);
+    this.nombreInvasors = n_invasors;
+    
+    // Mirem si no queden invasors -> Jugador ha guanyat!
+    if (n_invasors == 0) {
+      this.estat = JOC_GUANYAT;
     }
   }
 
   /**
    * Funció principal del joc, que l'inicialitza i el fa córrer
    * fins al final.
+   * 
+   * La simulació avança a passos de durada fixa
+   * (<code>1/passosPerSegon</code>), independentment de quants frames
+   * es mostrin. Si el joc va endarrerit es fan diversos passos seguits
+   * (com a molt <code>maxPassosRecuperacio</code>) i la resta de retard
+   * es descarta. Cada frame mostra la posició dels actors interpolada
+   * entre els dos últims passos.
    */
   public void run() {
     inici();
+    if (this.renderitzador != null) {
+      this.renderitzador.inici(this);
+    }
+    
+    final long periodePas   = 1000000000L / this.passosPerSegon;
+    final long periodeFrame = 1000000000L / this.fpsObjectiu;
+    long anterior    = System.nanoTime();
+    long acumulat    = 0;
+    long properFrame = anterior;
+    
+    // Comptadors per mesurar fps i passos per segon
+    long iniciMesura = anterior;
+    int frames = 0, passos = 0;
+    
     while(this.estat == JOC_EN_CURS) {
-      long ultimTemps = System.currentTimeMillis();
-      this.moviments();
-      this.colisions();
-      this.netejar();
-      this.repintar();
-      this.finestra.repaint();
-      long t = 1000/FPS - System.currentTimeMillis() + ultimTemps;
-      if (t>0) {
-        try {
-          Thread.sleep(t);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
+      long ara = System.nanoTime();
+      acumulat += ara - anterior;
+      anterior = ara;
+      
+      if (this.senseEspera) {
+        // Sense esperes, un pas (i un frame) per volta
+        acumulat = periodePas;
+      }
+      
+      int n = 0;
+      while (acumulat >= periodePas && this.estat == JOC_EN_CURS) {
+        this.pas();
+        acumulat -= periodePas;
+        passos++;
+        if (++n >= this.maxPassosRecuperacio) {
+          acumulat %= periodePas;
+          break;
         }
       }
-      ultimTemps = System.currentTimeMillis() - ultimTemps;
-      this.fps = ultimTemps==0 ? 0 : (int)(1000/ultimTemps);
+      
+      if (this.renderitzador != null && (this.senseEspera || ara >= properFrame)) {
+        final long inici = this.perfilador.inici();
+        this.renderitzador.repinta(this, (double)acumulat / periodePas);
+        this.perfilador.registra(Perfilador.REPINTAT, inici);
+        frames++;
+        properFrame += periodeFrame;
+        if (properFrame < ara) {
+          properFrame = ara + periodeFrame;
+        }
+      }
+      
+      if (ara - iniciMesura >= 1000000000L) {
+        this.fps = frames * 1e9 / (ara - iniciMesura);
+        this.pps = passos * 1e9 / (ara - iniciMesura);
+        iniciMesura = ara;
+        frames = passos = 0;
+      }
+      
+      if (!this.senseEspera) {
+        long proper = ara + periodePas - acumulat;
+        if (this.renderitzador != null && properFrame < proper) {
+          proper = properFrame;
+        }
+        this.marcapas.esperaFins(proper);
+      }
+    }
+    if (this.renderitzador != null) {
+      this.renderitzador.fi(this);
     }
-    fi();
   }
   
   /**
-   * Indica que el joc s'ha acabat i el seu resultat
+   * Fa avançar el joc tan ràpid com sigui possible, sense esperes ni
+   * renderitzador, fins que s'acabi o s'hagin fet el nombre de passos
+   * indicat. Els actors s'han d'haver afegit abans (per exemple, amb
+   * <code>inici()</code>).
+   * 
+   * @param maxPassos Nombre màxim de passos a executar.
+   * @return nombre de passos executats.
    */
-  private void fi() {
-    Image buffer = this.finestra.getBuffer();
-    synchronized(buffer) {
-      
-      Graphics2D g = (Graphics2D)buffer.getGraphics();
-      
-      final double ratio = (mon.VXmax - mon.VXmin)/WIDTH;
-      g.setTransform(AffineTransform.getScaleInstance(ratio, ratio));
-      
-      g.setColor(Colors.BANDA);
-      g.fillRect(0, (int)(HEIGHT/2 - HEIGHT/20), (int)WIDTH, (int)(HEIGHT/9));
-      
-      g.setColor(Colors.JUGADOR_TRAS);
-      g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-      final String msg = (this.estat == JOC_GUANYAT) ? "guanyat!" : "perdut!";
-      g.setFont(g.getFont().deriveFont(Font.BOLD).deriveFont(50f));
-      g.drawString("Has " + msg, (int)(WIDTH/2 - 150), (int)(HEIGHT/2 + 10));
-      g.setFont(g.getFont().deriveFont(20f));
-      g.drawString("Prem -t- per tornar a començar", (int)(WIDTH/2 - 160), (int)(HEIGHT/2 + 40));
+  public long executa(long maxPassos) {
+    long passos = 0;
+    while (this.estat == JOC_EN_CURS && passos < maxPassos) {
+      this.pas();
+      passos++;
     }
-    this.finestra.repaint();
+    return passos;
   }
 
-
   /**
-   * Dibuixa un actor utilitzant l'objecte graphics donat.
+   * Crea un tret per a aquest joc, reaprofitant-ne un de la reserva si
+   * n'hi ha. El tret encara s'ha d'afegir al joc amb
+   * <code>afegirActor</code>. Només s'ha de cridar des del fil del joc.
    * 
-   * @param g Objecte graphics amb el que dibuixar.
-   * @param a Actor a dibuixar.
+   * @param tipus Tipus del tret.
+   * @param x Coordenada "x" de la posició del tret.
+   * @param y Coordenada "y" de la posició del tret.
+   * @param vx Component "x" de la velocitat del tret.
+   * @param vy Component "y" de la velocitat del tret.
+   * @return tret a punt per afegir al joc.
    */
-  public void pinta(Graphics g, Actor a) {
-    Image i = this.cacheImatges.get(a.getNomImatge());
-    if (i != null) {
-      final Point p = this.mon.worldToView(a.getPosicio());
-      g.drawImage(i, p.x, p.y, null);
-    }
+  public Tret creaTret(int tipus, double x, double y, double vx, double vy) {
+    return this.poolTrets.obte(this, tipus, x, y, vx, vy);
   }
-
+  
   /**
-   * Força el joc a regenerar les imatges, utilitzat quan la
-   * finestra és redimensionada.
+   * Retorna la reserva de trets d'aquest joc, per consultar-ne
+   * l'ocupació i les fallades.
+   * 
+   * @return reserva de trets del joc.
    */
-  public void regeneraImatges() {
-    this.cacheImatges.esborra();
+  public PoolTrets getPoolTrets() {
+    return this.poolTrets;
   }
   
   /**
-   * Afegeix un nou actor al joc.
+   * Afegeix un nou actor al joc. Els actors ja s'afegeixen al
+   * magatzem del joc en crear-se, així que només es comprova que
+   * l'actor sigui realment al joc.
    * 
    * @param actor Actor a afegir.
    */
@@ -323,11 +901,21 @@ public class Joc implements Runnable {
     if (a==null) {
       throw new RuntimeException("Estàs flipant!");
     }
-    synchronized(this.actors) {
-      this.actors.add(a);
+    if (!a.isEnJoc() || a.store != this.store) {
+      throw new IllegalStateException("L'actor no pertany a aquest joc");
     }
   }
 
+  /**
+   * Envia una ordre al joc, que l'executarà al principi del següent pas.
+   * Es pot cridar des de qualsevol fil i no es bloqueja mai.
+   * 
+   * @param o Ordre a executar.
+   */
+  public void ordena(Ordre o) {
+    this.ordres.afegeix(o);
+  }
+
   /**
    * Indica si el joc està acabat o no.
    * 
@@ -347,12 +935,349 @@ public class Joc implements Runnable {
   }
   
   /**
-   * Retorna l'objecte conversor pantalla-mon-pantalla.
+   * Retorna la mida de les cel·les de la graella de col·lisions.
+   * 
+   * @return mida de les cel·les, o un valor no positiu si es
+   * comproven totes les parelles.
+   */
+  public double getMidaCella() {
+    return this.midaCella;
+  }
+  
+  /**
+   * Canvia la mida de les cel·les de la graella de col·lisions. Un
+   * valor no positiu desactiva la graella i fa comprovar totes les
+   * parelles d'actors.
+   * 
+   * @param midaCella nova mida de les cel·les.
+   */
+  public void setMidaCella(double midaCella) {
+    this.midaCella = midaCella;
+  }
+  
+  /**
+   * Indica si les col·lisions es comproven amb les màscares de bits de
+   * les imatges dels actors.
+   * 
+   * @return <code>true</code> si es fan servir màscares.
+   */
+  public boolean isColisionsPerMascara() {
+    return this.colisionsPerMascara;
+  }
+  
+  /**
+   * Tria si les col·lisions es comproven amb les màscares de bits de les
+   * imatges dels actors (<code>true</code>) o amb les seves formes
+   * geomètriques (<code>false</code>).
+   * 
+   * @param colisionsPerMascara si s'han de fer servir màscares.
+   */
+  public void setColisionsPerMascara(boolean colisionsPerMascara) {
+    this.colisionsPerMascara = colisionsPerMascara;
+  }
+  
+  /**
+   * Indica si les col·lisions dels trets es comproven al llarg de tot
+   * el seu recorregut durant el pas.
+   * 
+   * @return <code>true</code> si les col·lisions són contínues.
+   */
+  public boolean isColisionsContinues() {
+    return this.colisionsContinues;
+  }
+  
+  /**
+   * Tria si les col·lisions dels trets es comproven al llarg de tot el
+   * seu recorregut durant el pas i es resolen per ordre d'impacte
+   * (<code>true</code>), o només a la posició final (<code>false</code>).
+   * 
+   * @param colisionsContinues si les col·lisions han de ser contínues.
+   */
+  public void setColisionsContinues(boolean colisionsContinues) {
+    this.colisionsContinues = colisionsContinues;
+  }
+  
+  /**
+   * Retorna el perfilador on es mesura la durada de cada fase.
+   * 
+   * @return perfilador del joc.
+   */
+  public Perfilador getPerfilador() {
+    return this.perfilador;
+  }
+  
+  /**
+   * Canvia el perfilador on es mesura la durada de cada fase (per
+   * exemple, per acumular les mesures de diverses partides).
+   * 
+   * @param perfilador nou perfilador.
+   */
+  public void setPerfilador(Perfilador perfilador) {
+    this.perfilador = perfilador;
+  }
+  
+  /**
+   * Retorna l'enregistrador de les entrades del jugador.
+   * 
+   * @return enregistrador, o <code>null</code> si no se n'enregistren.
+   */
+  public Enregistrador getEnregistrador() {
+    return this.enregistrador;
+  }
+  
+  /**
+   * Indica on s'han d'enregistrar les entrades del jugador a cada pas.
+   * S'ha de fer abans del primer pas del joc.
+   * 
+   * @param enregistrador enregistrador, o <code>null</code> per no
+   * enregistrar-les.
+   */
+  public void setEnregistrador(Enregistrador enregistrador) {
+    this.enregistrador = enregistrador;
+  }
+  
+  /**
+   * Retorna la llavor dels números aleatoris del joc.
+   * 
+   * @return llavor del joc.
+   */
+  public long getLlavor() {
+    return this.llavor;
+  }
+  
+  /**
+   * Retorna el generador aleatori del joc. Només s'ha de fer servir des
+   * del fil del joc.
+   * 
+   * @return generador aleatori del joc.
+   */
+  public Aleatori getAleatori() {
+    return this.aleatori;
+  }
+  
+  /**
+   * Retorna el nombre d'invasors que quedaven en acabar l'últim pas.
+   * 
+   * @return nombre d'invasors.
+   */
+  public int getNombreInvasors() {
+    return this.nombreInvasors;
+  }
+  
+  /**
+   * Retorna el nombre de passos simulats des de l'inici del joc.
+   * 
+   * @return nombre de passos.
+   */
+  public long getNombrePassos() {
+    return this.nombrePassos;
+  }
+  
+  /**
+   * Canvia el nombre de passos simulats (en restaurar una instantània).
+   * 
+   * @param nombrePassos nou nombre de passos.
+   */
+  void setNombrePassos(long nombrePassos) {
+    this.nombrePassos = nombrePassos;
+  }
+  
+  /**
+   * Retorna la llavor de la seqüència aleatòria del tros de moviment
+   * donat en el pas actual. Només depèn de la llavor del joc, del pas i
+   * del tros, de manera que cada fil pot tenir el seu generador sense
+   * compartir res amb els altres.
+   * 
+   * @param tros Índex del tros d'actors.
+   * @return llavor de la seqüència del tros.
+   */
+  long getLlavorTros(int tros) {
+    return Aleatori.barreja(this.llavor, this.nombrePassos, tros);
+  }
+  
+  /**
+   * Retorna el nombre d'actors a partir del qual els moviments es fan
+   * en paral·lel.
+   * 
+   * @return llindar d'actors, o un valor no positiu si els moviments
+   * sempre es fan en sèrie.
+   */
+  public int getLlindarMovimentParallel() {
+    return this.llindarMovimentParallel;
+  }
+  
+  /**
+   * Estableix el nombre d'actors a partir del qual els moviments es fan
+   * en paral·lel. El resultat és el mateix que en sèrie.
+   * 
+   * @param llindarMovimentParallel llindar d'actors, o un valor no
+   * positiu per fer sempre els moviments en sèrie.
+   */
+  public void setLlindarMovimentParallel(int llindarMovimentParallel) {
+    this.llindarMovimentParallel = llindarMovimentParallel;
+  }
+  
+  /**
+   * Retorna el nombre de parelles candidates a partir del qual les
+   * col·lisions es comproven en paral·lel.
+   * 
+   * @return llindar de parelles, o un valor no positiu si sempre es
+   * comproven en sèrie.
+   */
+  public int getLlindarColisionsParallel() {
+    return this.llindarColisionsParallel;
+  }
+  
+  /**
+   * Estableix el nombre de parelles candidates a partir del qual les
+   * col·lisions es comproven en paral·lel. Les col·lisions s'apliquen
+   * igualment en un sol fil i en el mateix ordre, així que el resultat
+   * és el mateix que en sèrie.
+   * 
+   * @param llindarColisionsParallel llindar de parelles, o un valor no
+   * positiu per comprovar-les sempre en sèrie.
+   */
+  public void setLlindarColisionsParallel(int llindarColisionsParallel) {
+    this.llindarColisionsParallel = llindarColisionsParallel;
+  }
+  
+  /**
+   * Retorna la reserva de fils compartida per les fases en paral·lel
+   * dels jocs, amb <code>FILS</code> fils.
+   * 
+   * @return reserva de fils.
+   */
+  static synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(Math.max(1, FILS));
+    }
+    return pool;
+  }
+  
+  /**
+   * Indica si el joc ha de córrer sense esperes entre passos, tan
+   * ràpid com pugui.
+   * 
+   * @param senseEspera <code>true</code> per no esperar entre passos.
+   */
+  public void setSenseEspera(boolean senseEspera) {
+    this.senseEspera = senseEspera;
+  }
+  
+  /**
+   * Retorna el jugador d'aquest joc.
+   * 
+   * @return jugador del joc, o <code>null</code> si encara no s'ha
+   * inicialitzat.
+   */
+  public Jugador getJugador() {
+    return this.jugador;
+  }
+  
+  /**
+   * Canvia el jugador d'aquest joc (en restaurar una instantània).
+   * 
+   * @param jugador nou jugador, o <code>null</code>.
+   */
+  void setJugador(Jugador jugador) {
+    this.jugador = jugador;
+  }
+  
+  /**
+   * Retorna l'estat actual del joc.
+   * 
+   * @return <code>JOC_EN_CURS</code>, <code>JOC_GUANYAT</code> o
+   * <code>JOC_PERDUT</code>.
+   */
+  public int getEstat() {
+    return this.estat;
+  }
+  
+  /**
+   * Retorna els frames per segon mostrats durant l'últim segon.
+   * 
+   * @return frames per segon.
+   */
+  public double getFps() {
+    return this.fps;
+  }
+  
+  /**
+   * Retorna els passos de simulació per segon fets durant l'últim
+   * segon.
+   * 
+   * @return passos per segon.
+   */
+  public double getPassosPerSegonMesurats() {
+    return this.pps;
+  }
+  
+  /**
+   * Retorna els passos de simulació per segon que s'intenten fer.
+   * 
+   * @return passos per segon.
+   */
+  public int getPassosPerSegon() {
+    return this.passosPerSegon;
+  }
+  
+  /**
+   * Canvia els passos de simulació per segon que s'intenten fer. Té
+   * efecte a partir del següent joc.
+   * 
+   * @param passosPerSegon nous passos per segon.
+   */
+  public void setPassosPerSegon(int passosPerSegon) {
+    this.passosPerSegon = passosPerSegon;
+  }
+  
+  /**
+   * Canvia els frames per segon que s'intenten mostrar. Té efecte a
+   * partir del següent joc.
+   * 
+   * @param fps nous frames per segon.
+   */
+  public void setFpsObjectiu(int fps) {
+    this.fpsObjectiu = fps;
+  }
+  
+  /**
+   * Retorna el nombre màxim de passos seguits que es fan per recuperar
+   * el retard quan el joc va endarrerit.
+   * 
+   * @return màxim de passos seguits.
+   */
+  public int getMaxPassosRecuperacio() {
+    return this.maxPassosRecuperacio;
+  }
+  
+  /**
+   * Canvia el nombre màxim de passos seguits que es fan per recuperar
+   * el retard quan el joc va endarrerit.
+   * 
+   * @param maxPassosRecuperacio nou màxim de passos seguits.
+   */
+  public void setMaxPassosRecuperacio(int maxPassosRecuperacio) {
+    this.maxPassosRecuperacio = maxPassosRecuperacio;
+  }
+  
+  /**
+   * Retorna el marcapassos que regula les esperes del bucle principal.
+   * 
+   * @return marcapassos del joc.
+   */
+  public Marcapas getMarcapas() {
+    return this.marcapas;
+  }
+  
+  /**
+   * Retorna el magatzem amb l'estat dels actors del joc. Només s'ha
+   * de fer servir des del fil del joc.
    * 
-   * @return objecte conversor pantalla-mon-pantalla.
+   * @return magatzem d'actors del joc.
    */
-  public World getMon() {
-    return this.mon;
+  public ActorStore getStore() {
+    return this.store;
   }
 
 }
@@ -29,17 +29,16 @@
 
 package es.uab.pa.invaders;
 
-import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
-import java.awt.geom.Area;
-import java.awt.geom.GeneralPath;
+import es.uab.pa.invaders.worldview.WRectangle;
 
 /**
- * Classe que representa al jugador.
+ * Classe que representa al jugador. El jugador no depèn de cap
+ * dispositiu d'entrada: qui el controli (el teclat de la finestra,
+ * o qualsevol altre) li indica la direcció i quan ha de disparar.
  * 
  * @author Marc Pujol <marc@la3.org>
  */
-public class Jugador extends Actor implements KeyListener {
+public class Jugador extends Actor {
   
   /**
    * Amplada del jugador en dimensions món.
@@ -64,21 +63,29 @@ public class Jugador extends Actor implements KeyListener {
   private static int MAX_VELOCITAT = 5;
   
   /**
-   * Mínim de temps (en milisegons) entre trets efectuats
+   * Mínim de temps (en milisegons de joc) entre trets efectuats
    * pel jugador.
    */
   private static int MIN_ENTRE_TRETS = 300;
   
   /**
-   * Indicadors de direcció.
+   * Indicadors de direcció. Només els modifica el fil del joc, en
+   * executar les ordres corresponents.
    */
-  private boolean dreta, esquerra;
+  boolean dreta, esquerra;
   
   /**
-   * Indicador de temps de l'últim tret, per controlar
-   * que el jugador no pugui disparar contínuament.
+   * Pas del joc en què s'ha fet l'últim tret, per controlar
+   * que el jugador no pugui disparar contínuament. Es compta en
+   * passos i no en temps real perquè les partides es puguin
+   * reproduir a qualsevol velocitat.
    */
-  private long ultimTret;
+  long ultimTret;
+  
+  /**
+   * Indica que el jugador ha de disparar en el següent pas.
+   */
+  boolean disparar;
   
   /**
    * Crea un nou jugador per al joc indicat.
@@ -86,15 +93,24 @@ public class Jugador extends Actor implements KeyListener {
    * @param joc Joc en el que participa el nou jugador.
    */
   public Jugador(Joc joc) {
-    super(joc);
-    this.ultimTret = 0;
+    super(joc, ActorStore.JUGADOR, WIDTH, HEIGHT, CAPA_JUGADOR, CAPA_INVASOR | CAPA_TRET_INVASOR);
+    this.ultimTret = Long.MIN_VALUE / 2;
     this.dreta = false;
     this.esquerra = false;
   }
   
-  @Override public void moure() {
-    super.moure();
+  /**
+   * Comportament del jugador després d'integrar-ne la posició:
+   * actualitza la velocitat segons la direcció i dispara si cal.
+   * 
+   * @param e Efectes on guardar els canvis al joc.
+   */
+  void comportament(EfectesMoviment e) {
     this.actualitzaVelocitat();
+    if (this.disparar) {
+      this.disparar = false;
+      this.dispara(e);
+    }
   }
   
   /**
@@ -103,15 +119,9 @@ public class Jugador extends Actor implements KeyListener {
    * @param a Actor amb el que s'ha produït la col·lisió.
    */
   public void colisiona(Actor a) {
-
-    // Els trets de jugador no el maten a ell mateix
-    if (a instanceof Tret && ((Tret)a).getTipus() == Tret.TRET_JUGADOR) {
-      return;
-    }
-    
     this.setPerEsborrar(true);
   }
-
+  
   /**
    * Retorna el nom de la imatge que representa al jugador.
    */
@@ -137,88 +147,65 @@ public class Jugador extends Actor implements KeyListener {
     return WIDTH;
   }
   
-  /**
-   * Retorna el perfil d'un invasor en forma d'àrea, per realitzar
-   * la detecció de col·lisions.
-   */
-  public Area getCurrentArea() {
-    GeneralPath p = new GeneralPath();
-    p.moveTo((float)(posicio.x), (float)(posicio.y + HEIGHT));
-    p.lineTo((float)(posicio.x + WIDTH/2), (float)posicio.y);
-    p.lineTo((float)(posicio.x + WIDTH), (float)(posicio.y + HEIGHT));
-      
-    return new Area(p);
-  }
-  
   /**
    * Actualitza la velocitat del jugador segons les tecles
    * que estan premudes.
    */
   private void actualitzaVelocitat() {
-    //this.velocity.x = 0;
-    if (esquerra && this.velocity.x > -MAX_VELOCITAT)
-      this.velocity.x += -VELOCITAT;
-    if (dreta && this.velocity.x < MAX_VELOCITAT)
-      this.velocity.x += VELOCITAT;
-    if (!esquerra && !dreta && this.velocity.x != 0) {
-      this.velocity.x += (this.velocity.x > 0 ? -VELOCITAT : VELOCITAT); 
+    final double[] vx = this.store.vx;
+    final int i = this.index;
+    if (esquerra && vx[i] > -MAX_VELOCITAT)
+      vx[i] += -VELOCITAT;
+    if (dreta && vx[i] < MAX_VELOCITAT)
+      vx[i] += VELOCITAT;
+    if (!esquerra && !dreta && vx[i] != 0) {
+      vx[i] += (vx[i] > 0 ? -VELOCITAT : VELOCITAT); 
     }
   }
 
   /**
-   * Funció que es crida quan l'usuari prem una tecla i actualitza
-   * la direcció del jugador si es tracta de les fletxes dretes o
-   * esquerra.
+   * Indica si el jugador s'ha de moure cap a l'esquerra. Es pot cridar
+   * des de qualsevol fil: el canvi s'aplica al principi del següent pas.
    * 
-   * @param e Event que porta la informació sobre la tecla premuda.
+   * @param esquerra <code>true</code> mentre el jugador s'hagi de moure
+   * cap a l'esquerra.
    */
-  public void keyPressed(KeyEvent e) {
-    switch(e.getKeyCode()) {
-    case KeyEvent.VK_LEFT:  esquerra = true; break;
-    case KeyEvent.VK_RIGHT: dreta = true; break;
-    case KeyEvent.VK_SPACE: this.fire(); return;
-    default: return;
-    }
-    
-    //this.actualitzaVelocitat();
+  public void setEsquerra(boolean esquerra) {
+    this.joc.ordena(Ordre.esquerra(this, esquerra));
   }
-
+  
   /**
-   * Dispara un tret a la posició actual del jugador.
+   * Indica si el jugador s'ha de moure cap a la dreta. Es pot cridar
+   * des de qualsevol fil: el canvi s'aplica al principi del següent pas.
+   * 
+   * @param dreta <code>true</code> mentre el jugador s'hagi de moure
+   * cap a la dreta.
    */
-  private void fire() {
-    long temps = System.currentTimeMillis();
-    if (temps - this.ultimTret >= MIN_ENTRE_TRETS) {
-      final Tret t = new Tret(this.joc, Tret.TRET_JUGADOR);
-      t.setPosicio(this.posicio.x + WIDTH/2 - Tret.WIDTH/2, this.posicio.y - Tret.HEIGHT);
-      t.setVelocity(0, -2.5);
-      this.joc.afegirActor(t);
-      this.ultimTret = temps;
-    }
+  public void setDreta(boolean dreta) {
+    this.joc.ordena(Ordre.dreta(this, dreta));
   }
 
   /**
-   * Funció que es crida quan l'usuari allibera una tecla i actualitza
-   * la direcció del jugador si es tracta de les fletxes dretes o
-   * esquerra.
-   * 
-   * @param e Event que porta la informació sobre la tecla alliberada.
+   * Demana al jugador que dispari. El tret es crea en el següent pas
+   * del joc, des del fil del joc.
    */
-  public void keyReleased(KeyEvent e) {
-    switch(e.getKeyCode()) {
-    case KeyEvent.VK_LEFT:  esquerra = false; break;
-    case KeyEvent.VK_RIGHT: dreta = false; break;
-    default: return;
-    }
-    
-    //this.actualitzaVelocitat();
+  public void fire() {
+    this.joc.ordena(Ordre.dispara(this));
   }
-
+  
   /**
-   * No utilitzat, aquest mètode només hi és per complir
-   * amb la interfície <code>KeyListener</code>.
+   * Dispara un tret a la posició actual del jugador.
    */
-  public void keyTyped(KeyEvent e) {}
+  private void dispara(EfectesMoviment e) {
+    final long pas = this.joc.getNombrePassos();
+    final long minim = (long)MIN_ENTRE_TRETS * this.joc.getPassosPerSegon() / 1000;
+    if (pas - this.ultimTret >= minim) {
+      e.creaTret(Tret.TRET_JUGADOR,
+          this.getX() + WIDTH/2 - Tret.WIDTH/2, this.getY() - Tret.HEIGHT,
+          0, -2.5);
+      this.ultimTret = pas;
+    }
+  }
   
   /**
    * Comprova si s'ha efectuat una col·lisió amb el jugador donat.
@@ -238,8 +225,7 @@ public class Jugador extends Actor implements KeyListener {
    * aquest tret, <code>false</code> sinó.
    */
   public boolean hasColisio(Tret tret){
-    Area a = this.getArea();
-    return a.intersects(tret.posicio.x, tret.posicio.y, Tret.WIDTH, Tret.HEIGHT);
+    return this.intersectaRect(tret.getX(), tret.getY(), Tret.WIDTH, Tret.HEIGHT);
   }
   
   /**
@@ -250,10 +236,43 @@ public class Jugador extends Actor implements KeyListener {
    * aquest invasor, <code>false</code> sinó.
    */
   public boolean hasColisio(Invasor invasor){
-    Area a = new Area(this.getArea());
-    Area b = invasor.getArea();
-    a.intersect(b);
-    return !a.isEmpty();
+    final double ix = invasor.getX(), iy = invasor.getY();
+    if (!WRectangle.intersects(this.getX(), this.getY(), WIDTH, HEIGHT,
+        ix, iy, Invasor.WIDTH, Invasor.HEIGHT)) {
+      return false;
+    }
+    return this.intersectaElipse(ix, iy, Invasor.WIDTH, Invasor.HEIGHT);
+  }
+  
+  /**
+   * Indica si el triangle del jugador se solapa amb el rectangle donat.
+   */
+  boolean intersectaRect(double x, double y, double amplada, double alcada) {
+    final double jx = this.getX(), jy = this.getY();
+    return Formes.triangleIntersectaRect(jx, jy + HEIGHT, jx + WIDTH/2, jy,
+        jx + WIDTH, jy + HEIGHT, x, y, amplada, alcada);
+  }
+  
+  /**
+   * Instant en què el rectangle donat, movent-se <code>(dx, dy)</code>
+   * respecte del jugador, el toca per primer cop. El jugador es pren a
+   * la seva posició anterior.
+   */
+  double tempsImpacteRect(double x, double y, double amplada, double alcada,
+      double dx, double dy) {
+    final double jx = this.getXAnterior(), jy = this.getYAnterior();
+    return Formes.tempsRectTriangle(x, y, amplada, alcada, dx, dy,
+        jx, jy + HEIGHT, jx + WIDTH/2, jy, jx + WIDTH, jy + HEIGHT);
+  }
+  
+  /**
+   * Indica si el triangle del jugador se solapa amb l'el·lipse donada
+   * (per la seva caixa).
+   */
+  boolean intersectaElipse(double x, double y, double amplada, double alcada) {
+    final double jx = this.getX(), jy = this.getY();
+    return Formes.triangleIntersectaElipse(jx, jy + HEIGHT, jx + WIDTH/2, jy,
+        jx + WIDTH, jy + HEIGHT, x, y, amplada, alcada);
   }
 
 }
@@ -29,17 +29,182 @@
 
 package es.uab.pa.invaders;
 
+import java.io.IOException;
+import java.util.List;
+
 public class Main {
 
   /**
    * Classe principal que inicia el programa.
    * 
-   * @param args ignorat.
+   * Amb l'opció <code>--headless [passos]</code> no s'obre cap finestra:
+   * es fa córrer un joc tan ràpid com sigui possible (com a molt el
+   * nombre de passos indicat) i se'n mostra el rendiment.
+   * 
+   * Amb l'opció <code>--passiu</code> la finestra es repinta a través
+   * del buffer off-screen en comptes de presentar-se activament amb un
+   * <code>BufferStrategy</code>.
+   * 
+   * Amb l'opció <code>--perfil fitxer</code>, en acabar es desen al
+   * fitxer indicat els histogrames de durada de cada fase.
+   * 
+   * Amb l'opció <code>--llavor n</code> el joc sense finestra fa servir
+   * la llavor indicada, de manera que dues execucions són idèntiques.
+   * 
+   * Amb l'opció <code>--enregistra fitxer</code> s'enregistren les
+   * entrades del jugador de la partida de la finestra al fitxer indicat,
+   * i amb <code>--reprodueix fitxer</code> es torna a fer córrer sense
+   * finestra, tan ràpid com sigui possible (com a molt el nombre de
+   * passos de <code>--headless</code>, si s'indica).
+   * 
+   * Amb l'opció <code>--sessions n [segons]</code> s'allotgen n partides
+   * sense finestra en un <code>ServidorSessions</code> durant el temps
+   * indicat (10 segons per defecte), i se'n mostra el retard dels passos.
+   * 
+   * @param args opcions de la línia d'ordres.
    */
   public static void main(String[] args) {
     
+    boolean headless = false;
+    long maxPassos = Long.MAX_VALUE;
+    long llavor = Aleatori.novaLlavor();
+    String reproduccio = null;
+    int sessions = 0;
+    int segons = 10;
+    for (int a=0; a<args.length; a++) {
+      if (args[a].equals("--headless")) {
+        headless = true;
+        if (a+1 < args.length && !args[a+1].startsWith("--")) {
+          maxPassos = Long.parseLong(args[++a]);
+        }
+      } else if (args[a].equals("--passiu")) {
+        Finestra.RENDERITZAT_ACTIU = false;
+      } else if (args[a].equals("--perfil") && a+1 < args.length) {
+        Perfilador.FITXER = args[++a];
+      } else if (args[a].equals("--llavor") && a+1 < args.length) {
+        llavor = Long.parseLong(args[++a]);
+      } else if (args[a].equals("--enregistra") && a+1 < args.length) {
+        Enregistrador.FITXER = args[++a];
+      } else if (args[a].equals("--reprodueix") && a+1 < args.length) {
+        reproduccio = args[++a];
+      } else if (args[a].equals("--sessions") && a+1 < args.length) {
+        sessions = Integer.parseInt(args[++a]);
+        if (a+1 < args.length && !args[a+1].startsWith("--")) {
+          segons = Integer.parseInt(args[++a]);
+        }
+      }
+    }
+    
+    if (sessions > 0) {
+      sessions(sessions, segons);
+      return;
+    }    
+    if (reproduccio != null) {
+      reprodueix(reproduccio, maxPassos);
+      return;
+    }
+    if (headless) {
+      headless(maxPassos, llavor);
+      return;
+    }
     new Finestra();
 
   }
+  
+  /**
+   * Fa córrer un joc sense finestra i mostra quants passos per segon
+   * ha pogut simular.
+   * 
+   * @param maxPassos Nombre màxim de passos a simular.
+   * @param llavor Llavor dels números aleatoris del joc.
+   */
+  private static void headless(long maxPassos, long llavor) {
+    final Joc joc = new Joc(llavor);
+    joc.inici();
+    
+    final long inici = System.nanoTime();
+    final long passos = joc.executa(maxPassos);
+    informa(joc, passos, System.nanoTime() - inici);
+  }
+  
+  /**
+   * Reprodueix sense finestra la partida enregistrada al fitxer donat,
+   * tan ràpid com sigui possible, i en mostra el rendiment.
+   * 
+   * @param fitxer Fitxer amb l'enregistrament.
+   * @param maxPassos Nombre màxim de passos a reproduir.
+   */
+  private static void reprodueix(String fitxer, long maxPassos) {
+    try {
+      final Reproductor r = Reproductor.obre(fitxer);
+      try {
+        final Joc joc = r.creaJoc();
+        final long inici = System.nanoTime();
+        final long passos = r.executa(joc, maxPassos);
+        final long durada = System.nanoTime() - inici;
+        informa(joc, passos, durada);
+        System.out.println("x" + (long)(passos * 1e9 / joc.getPassosPerSegon() / durada)
+            + " respecte al temps real");
+      } finally {
+        r.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+  
+  /**
+   * Allotja el nombre de partides donat en un servidor de sessions
+   * durant el temps indicat, i en mostra el retard dels passos.
+   * 
+   * @param n Nombre de sessions.
+   * @param segons Durada de la prova, en segons.
+   */
+  private static void sessions(int n, int segons) {
+    final ServidorSessions servidor = new ServidorSessions();
+    for (int i=0; i<n; i++) {
+      servidor.crea();
+    }
+    try {
+      Thread.sleep(segons * 1000L);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    
+    final List<Sessio> l = servidor.getSessions();
+    servidor.atura();
+    final Histograma retard = new Histograma();
+    long passos = 0, saltats = 0;
+    for (Sessio s : l) {
+      retard.afegeix(s.getRetard());
+      passos += s.getPassos();
+      saltats += s.getSaltats();
+    }
+    System.out.println(l.size() + " sessions en marxa, " + servidor.getAcabades()
+        + " acabades, " + Joc.FILS + " fils, " + passos + " passos ("
+        + saltats + " saltats)");
+    System.out.println("retard: p50 " + retard.percentil(0.5) / 1000
+        + " p99 " + retard.percentil(0.99) / 1000
+        + " max " + retard.getMaxim() / 1000 + " us");
+  }
+  
+  /**
+   * Mostra el rendiment d'un joc que ha corregut sense finestra.
+   * 
+   * @param joc Joc que ha corregut.
+   * @param passos Nombre de passos executats.
+   * @param durada Durada total dels passos, en nanosegons.
+   */
+  private static void informa(Joc joc, long passos, long durada) {
+    final double segons = durada / 1e9;
+    System.out.println(passos + " passos en " + segons + " s ("
+        + (long)(passos / segons) + " passos/s), estat final: " + joc.getEstat()
+        + ", llavor: " + joc.getLlavor());
+    final Perfilador p = joc.getPerfilador();
+    for (int f=Perfilador.MOVIMENTS; f<=Perfilador.PAS; f++) {
+      System.out.println(p.resum(f));
+    }
+    p.desa();
+  }
 
 }
@@ -0,0 +1,112 @@
+/*
+ * @(#)Marcapas.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Marcapassos que espera fins a un instant donat (en el rellotge de
+ * <code>System.nanoTime</code>). Dorm mentre queda prou temps i fa
+ * una espera activa durant l'últim tram, perquè <code>Thread.sleep</code>
+ * sovint es passa d'un o dos mil·lisegons.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Marcapas {
+  
+  /**
+   * Marge per defecte (en nanosegons) que s'espera de forma activa.
+   */
+  public static long MARGE_ESPERA_ACTIVA = 2000000L;
+  
+  /**
+   * Marge (en nanosegons) que s'espera de forma activa.
+   */
+  private long margeEsperaActiva;
+  
+  /**
+   * Crea un marcapassos amb el marge d'espera activa per defecte.
+   */
+  public Marcapas() {
+    this(MARGE_ESPERA_ACTIVA);
+  }
+  
+  /**
+   * Crea un marcapassos amb el marge d'espera activa donat.
+   * 
+   * @param margeEsperaActiva Temps (en nanosegons) abans de l'instant
+   * objectiu a partir del qual es deixa de dormir.
+   */
+  public Marcapas(long margeEsperaActiva) {
+    this.margeEsperaActiva = margeEsperaActiva;
+  }
+  
+  /**
+   * Espera fins a l'instant donat. Si el fil és interromput, torna
+   * immediatament deixant-lo marcat com a interromput.
+   * 
+   * @param instant Instant (segons <code>System.nanoTime</code>) fins al
+   * que s'ha d'esperar.
+   */
+  public void esperaFins(long instant) {
+    long resta = instant - System.nanoTime();
+    while (resta > 0) {
+      if (resta > this.margeEsperaActiva) {
+        final long dormir = resta - this.margeEsperaActiva;
+        try {
+          Thread.sleep(dormir / 1000000L, (int)(dormir % 1000000L));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      } else {
+        Thread.yield();
+      }
+      resta = instant - System.nanoTime();
+    }
+  }
+  
+  /**
+   * Retorna el marge que s'espera de forma activa.
+   * 
+   * @return marge d'espera activa, en nanosegons.
+   */
+  public long getMargeEsperaActiva() {
+    return this.margeEsperaActiva;
+  }
+  
+  /**
+   * Canvia el marge que s'espera de forma activa.
+   * 
+   * @param margeEsperaActiva nou marge d'espera activa, en nanosegons.
+   */
+  public void setMargeEsperaActiva(long margeEsperaActiva) {
+    this.margeEsperaActiva = margeEsperaActiva;
+  }
+  
+}
@@ -0,0 +1,195 @@
+/*
+ * @(#)MascaraColisio.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+/**
+ * Màscara de bits d'una imatge, per a detectar col·lisions a nivell de
+ * píxel. Cada fila de la imatge es guarda empaquetada en
+ * <code>long</code>s (el bit <code>k</code> de la paraula <code>p</code>
+ * correspon a la columna <code>64*p + k</code>), de manera que dues
+ * màscares es poden comparar de 64 en 64 píxels amb un sol AND.
+ * 
+ * Les màscares són immutables, i per tant es poden compartir entre
+ * jocs i threads.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public final class MascaraColisio {
+  
+  /**
+   * Valor mínim del canal alfa perquè un píxel formi part de la màscara.
+   */
+  public static int LLINDAR_ALFA = 128;
+  
+  /**
+   * Mida de la màscara, en píxels.
+   */
+  private final int amplada, alcada;
+  
+  /**
+   * Nombre de paraules de cada fila.
+   */
+  private final int paraules;
+  
+  /**
+   * Píxels per unitat del món amb els que s'ha generat la màscara.
+   */
+  private final double resolucio;
+  
+  /**
+   * Bits de totes les files, una darrera l'altra.
+   */
+  private final long[] bits;
+  
+  /**
+   * Crea la màscara d'una imatge, marcant els píxels amb un alfa de com
+   * a mínim <code>LLINDAR_ALFA</code>.
+   * 
+   * @param img Imatge de la que s'extreu la màscara.
+   * @param resolucio Píxels per unitat del món de la imatge.
+   */
+  public MascaraColisio(Image img, double resolucio) {
+    final BufferedImage b = (BufferedImage)img;
+    this.amplada   = b.getWidth();
+    this.alcada    = b.getHeight();
+    this.paraules  = (this.amplada + 63) >>> 6;
+    this.resolucio = resolucio;
+    this.bits      = new long[this.paraules * this.alcada];
+    
+    final int[] fila = new int[this.amplada];
+    for (int y=0; y<this.alcada; y++) {
+      b.getRGB(0, y, this.amplada, 1, fila, 0, this.amplada);
+      for (int x=0; x<this.amplada; x++) {
+        if ((fila[x] >>> 24) >= LLINDAR_ALFA) {
+          this.bits[y*this.paraules + (x >>> 6)] |= 1L << (x & 63);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Indica si aquesta màscara i la màscara donada, desplaçada
+   * <code>(dx, dy)</code> píxels respecte d'aquesta, tenen algun píxel
+   * en comú.
+   * 
+   * @param m Altra màscara.
+   * @param dx Desplaçament horitzontal de l'altra màscara.
+   * @param dy Desplaçament vertical de l'altra màscara.
+   * @return <code>true</code> si les màscares se solapen.
+   */
+  public boolean solapa(MascaraColisio m, int dx, int dy) {
+    
+    // Rectangle comú, en coordenades d'aquesta màscara
+    final int x0 = Math.max(0, dx), x1 = Math.min(this.amplada, dx + m.amplada);
+    final int y0 = Math.max(0, dy), y1 = Math.min(this.alcada, dy + m.alcada);
+    if (x0 >= x1 || y0 >= y1) {
+      return false;
+    }
+    
+    final int p0 = x0 >>> 6, p1 = (x1 - 1) >>> 6;
+    for (int y=y0; y<y1; y++) {
+      final int fa = y * this.paraules;
+      final int fb = (y - dy) * m.paraules;
+      for (int p=p0; p<=p1; p++) {
+        if ((this.bits[fa + p] & m.llegeix(fb, (p << 6) - dx)) != 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Retorna els 64 bits de la fila que comença a <code>fila</code>
+   * a partir de la columna <code>x</code> (que pot caure fora de la
+   * màscara: les columnes de fora valen zero).
+   */
+  private long llegeix(int fila, int x) {
+    final int p = x >> 6;
+    final int k = x & 63;
+    final long a = paraula(fila, p);
+    if (k == 0) {
+      return a;
+    }
+    return (a >>> k) | (paraula(fila, p + 1) << (64 - k));
+  }
+  
+  /**
+   * Retorna la paraula p de la fila donada, o zero si cau fora.
+   */
+  private long paraula(int fila, int p) {
+    return (p < 0 || p >= this.paraules) ? 0 : this.bits[fila + p];
+  }
+  
+  /**
+   * Indica si el píxel donat forma part de la màscara.
+   * 
+   * @param x Columna del píxel.
+   * @param y Fila del píxel.
+   * @return <code>true</code> si el píxel és dins la màscara.
+   */
+  public boolean get(int x, int y) {
+    if (x < 0 || y < 0 || x >= this.amplada || y >= this.alcada) {
+      return false;
+    }
+    return (this.bits[y*this.paraules + (x >>> 6)] & (1L << (x & 63))) != 0;
+  }
+  
+  /**
+   * Retorna l'amplada de la màscara.
+   * 
+   * @return amplada en píxels.
+   */
+  public int getAmplada() {
+    return amplada;
+  }
+  
+  /**
+   * Retorna l'alçada de la màscara.
+   * 
+   * @return alçada en píxels.
+   */
+  public int getAlcada() {
+    return alcada;
+  }
+  
+  /**
+   * Retorna la resolució amb la que s'ha generat la màscara.
+   * 
+   * @return píxels per unitat del món.
+   */
+  public double getResolucio() {
+    return resolucio;
+  }
+  
+}
@@ -0,0 +1,218 @@
+/*
+ * @(#)Ordre.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Ordre que un altre fil (per exemple, el de la finestra en prémer una
+ * tecla) envia a un joc. Les ordres es guarden a la
+ * <code>CuaOrdres</code> del joc, i el fil del joc les executa totes
+ * juntes al principi de cada pas.
+ * 
+ * Un cop enviada, una ordre no s'ha de tornar a enviar.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public final class Ordre {
+  
+  /**
+   * Tipus d'ordre: començar o deixar d'anar cap a l'esquerra.
+   */
+  public static final int ESQUERRA = 0;
+  
+  /**
+   * Tipus d'ordre: començar o deixar d'anar cap a la dreta.
+   */
+  public static final int DRETA = 1;
+  
+  /**
+   * Tipus d'ordre: disparar.
+   */
+  public static final int DISPARA = 2;
+  
+  /**
+   * Tipus d'ordre: crear un tret.
+   */
+  public static final int CREA_TRET = 3;
+  
+  /**
+   * Tipus d'ordre: treure un actor del joc.
+   */
+  public static final int ELIMINA = 4;
+  
+  /**
+   * Tipus d'ordre: acabar el joc.
+   */
+  public static final int ACABA = 5;
+  
+  /**
+   * Tipus d'ordre.
+   */
+  final int tipus;
+  
+  /**
+   * Actor al que va dirigida l'ordre (si n'hi ha).
+   */
+  final Actor actor;
+  
+  /**
+   * Generació (veure <code>Actor.generacio</code>) que tenia l'actor en
+   * crear l'ordre. Els trets es reaprofiten, així que la mateixa vista
+   * pot passar a ser un altre actor abans que s'executi l'ordre; llavors
+   * la generació ja no coincideix.
+   */
+  final int generacio;
+  
+  /**
+   * Paràmetre enter de l'ordre: 1/0 per les direccions, tipus del tret
+   * o estat final del joc.
+   */
+  final int valor;
+  
+  /**
+   * Posició i velocitat del tret a crear.
+   */
+  final double x, y, vx, vy;
+  
+  /**
+   * Següent ordre de la cua.
+   */
+  volatile Ordre seguent;
+  
+  /**
+   * Crea una nova ordre.
+   */
+  private Ordre(int tipus, Actor actor, int valor, double x, double y, double vx, double vy) {
+    this.tipus = tipus;
+    this.actor = actor;
+    this.generacio = actor != null ? actor.generacio : 0;
+    this.valor = valor;
+    this.x = x;
+    this.y = y;
+    this.vx = vx;
+    this.vy = vy;
+  }
+  
+  /**
+   * Ordre perquè el jugador comenci o deixi d'anar cap a l'esquerra.
+   * 
+   * @param j Jugador.
+   * @param esquerra <code>true</code> per començar a anar-hi.
+   * @return nova ordre.
+   */
+  public static Ordre esquerra(Jugador j, boolean esquerra) {
+    return new Ordre(ESQUERRA, j, esquerra ? 1 : 0, 0, 0, 0, 0);
+  }
+  
+  /**
+   * Ordre perquè el jugador comenci o deixi d'anar cap a la dreta.
+   * 
+   * @param j Jugador.
+   * @param dreta <code>true</code> per començar a anar-hi.
+   * @return nova ordre.
+   */
+  public static Ordre dreta(Jugador j, boolean dreta) {
+    return new Ordre(DRETA, j, dreta ? 1 : 0, 0, 0, 0, 0);
+  }
+  
+  /**
+   * Ordre perquè el jugador dispari.
+   * 
+   * @param j Jugador.
+   * @return nova ordre.
+   */
+  public static Ordre dispara(Jugador j) {
+    return new Ordre(DISPARA, j, 0, 0, 0, 0, 0);
+  }
+  
+  /**
+   * Ordre per crear un tret.
+   * 
+   * @param tipus Tipus del tret.
+   * @param x Coordenada x inicial.
+   * @param y Coordenada y inicial.
+   * @param vx Velocitat horitzontal.
+   * @param vy Velocitat vertical.
+   * @return nova ordre.
+   */
+  public static Ordre creaTret(int tipus, double x, double y, double vx, double vy) {
+    return new Ordre(CREA_TRET, null, tipus, x, y, vx, vy);
+  }
+  
+  /**
+   * Ordre per treure un actor del joc.
+   * 
+   * @param a Actor a treure.
+   * @return nova ordre.
+   */
+  public static Ordre elimina(Actor a) {
+    return new Ordre(ELIMINA, a, 0, 0, 0, 0, 0);
+  }
+  
+  /**
+   * Ordre per acabar el joc.
+   * 
+   * @param estat Estat final del joc.
+   * @return nova ordre.
+   */
+  public static Ordre acaba(int estat) {
+    return new Ordre(ACABA, null, estat, 0, 0, 0, 0);
+  }
+  
+  /**
+   * Executa l'ordre sobre el joc donat. Les ordres dirigides a un actor
+   * que ja no és al joc (o que ara és un altre actor) no fan res.
+   * 
+   * @param joc Joc on executar l'ordre.
+   */
+  void executa(Joc joc) {
+    if (this.actor != null && (!this.actor.isEnJoc() || this.actor.store != joc.getStore()
+        || this.actor.generacio != this.generacio)) {
+      return;
+    }
+    switch (this.tipus) {
+    case ESQUERRA:  ((Jugador)this.actor).esquerra = this.valor != 0; break;
+    case DRETA:     ((Jugador)this.actor).dreta = this.valor != 0; break;
+    case DISPARA:   ((Jugador)this.actor).disparar = true; break;
+    case CREA_TRET: joc.afegirActor(joc.creaTret(this.valor, this.x, this.y, this.vx, this.vy)); break;
+    case ELIMINA:   this.actor.setPerEsborrar(true); break;
+    case ACABA:     joc.setAcabat(this.valor); break;
+    }
+  }
+  
+  /**
+   * Retorna el tipus d'ordre.
+   * 
+   * @return tipus d'ordre.
+   */
+  public int getTipus() {
+    return this.tipus;
+  }
+  
+}
@@ -0,0 +1,257 @@
+/*
+ * @(#)Perfilador.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Mesura quant dura cada fase dels passos i frames d'un joc, amb un
+ * <code>Histograma</code> per fase, per saber quina es menja el temps
+ * de cada frame.
+ * 
+ * Cada histograma només l'escriu un fil: les fases del pas i el
+ * repintat les mesura el fil del joc, i la presentació el fil que
+ * presenta els frames.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Perfilador {
+  
+  /**
+   * Indica si per defecte es mesuren les fases.
+   */
+  public static boolean PERFILAR = true;
+  
+  /**
+   * Fitxer on es desen els histogrames en acabar, o <code>null</code>
+   * per no desar-los.
+   */
+  public static String FITXER = null;
+  
+  /**
+   * Fase: moviments dels actors (incloses les ordres pendents).
+   */
+  public static final int MOVIMENTS = 0;
+  
+  /**
+   * Fase: col·lisions.
+   */
+  public static final int COLISIONS = 1;
+  
+  /**
+   * Fase: neteja dels actors eliminats.
+   */
+  public static final int NETEJA = 2;
+  
+  /**
+   * Fase: pas sencer de la simulació.
+   */
+  public static final int PAS = 3;
+  
+  /**
+   * Fase: dibuix d'un frame (incloent-hi la presentació en mode actiu).
+   */
+  public static final int REPINTAT = 4;
+  
+  /**
+   * Fase: presentació d'un frame a la pantalla.
+   */
+  public static final int PRESENTACIO = 5;
+  
+  /**
+   * Nombre de fases.
+   */
+  public static final int FASES = 6;
+  
+  /**
+   * Nom de cada fase.
+   */
+  private static final String[] NOMS = {
+    "moviments", "colisions", "neteja", "pas", "repintat", "presentacio"
+  };
+  
+  /**
+   * Histograma de cada fase.
+   */
+  private final Histograma[] histogrames = new Histograma[FASES];
+  
+  /**
+   * Indica si es mesuren les fases.
+   */
+  private volatile boolean actiu = PERFILAR;
+  
+  /**
+   * Crea un perfilador amb els histogrames buits.
+   */
+  public Perfilador() {
+    for (int f=0; f<FASES; f++) {
+      this.histogrames[f] = new Histograma();
+    }
+  }
+  
+  /**
+   * Marca l'inici d'una fase.
+   * 
+   * @return instant actual, en nanosegons (0 si no es mesura).
+   */
+  public long inici() {
+    return this.actiu ? System.nanoTime() : 0;
+  }
+  
+  /**
+   * Marca el final d'una fase començada a l'instant donat i n'apunta
+   * la durada.
+   * 
+   * @param fase Fase que acaba.
+   * @param inici Instant d'inici retornat per <code>inici()</code> o
+   *        per l'anterior <code>registra</code>.
+   * @return instant actual, que serveix d'inici de la fase següent.
+   */
+  public long registra(int fase, long inici) {
+    if (!this.actiu) {
+      return 0;
+    }
+    final long ara = System.nanoTime();
+    if (inici != 0) {
+      this.histogrames[fase].registra(ara - inici);
+    }
+    return ara;
+  }
+  
+  /**
+   * Apunta la durada donada a una fase.
+   * 
+   * @param fase Fase mesurada.
+   * @param durada Durada de la fase, en nanosegons.
+   */
+  public void registraDurada(int fase, long durada) {
+    if (this.actiu) {
+      this.histogrames[fase].registra(durada);
+    }
+  }
+  
+  /**
+   * Retorna l'histograma d'una fase.
+   * 
+   * @param fase Fase.
+   * @return histograma de la fase.
+   */
+  public Histograma getHistograma(int fase) {
+    return this.histogrames[fase];
+  }
+  
+  /**
+   * Retorna el nom d'una fase.
+   * 
+   * @param fase Fase.
+   * @return nom de la fase.
+   */
+  public static String getNom(int fase) {
+    return NOMS[fase];
+  }
+  
+  /**
+   * Indica si es mesuren les fases.
+   * 
+   * @return <code>true</code> si es mesuren.
+   */
+  public boolean isActiu() {
+    return this.actiu;
+  }
+  
+  /**
+   * Activa o desactiva les mesures.
+   * 
+   * @param actiu si s'han de mesurar les fases.
+   */
+  public void setActiu(boolean actiu) {
+    this.actiu = actiu;
+  }
+  
+  /**
+   * Retorna un resum d'una fase: percentils 50 i 99 i màxim, en
+   * mil·lisegons.
+   * 
+   * @param fase Fase.
+   * @return resum de la fase.
+   */
+  public String resum(int fase) {
+    final Histograma h = this.histogrames[fase];
+    return NOMS[fase] + ": p50 " + ms(h.percentil(0.5)) + " p99 " + ms(h.percentil(0.99))
+        + " max " + ms(h.getMaxim()) + " ms";
+  }
+  
+  /**
+   * Escriu el resum i les caselles de l'histograma de cada fase.
+   * 
+   * @param out On escriure.
+   */
+  public void escriu(PrintWriter out) {
+    for (int f=0; f<FASES; f++) {
+      final Histograma h = this.histogrames[f];
+      out.println("# " + this.resum(f) + ", " + h.getNombre() + " mesures, mitjana "
+          + ms((long)h.getMitjana()) + " ms");
+      out.println("# ns_min\tns_max\tnombre");
+      h.escriu(out);
+      out.println();
+    }
+    out.flush();
+  }
+  
+  /**
+   * Desa els histogrames al fitxer <code>FITXER</code>, si n'hi ha.
+   */
+  public void desa() {
+    if (FITXER == null) {
+      return;
+    }
+    try {
+      final PrintWriter out = new PrintWriter(new FileWriter(FITXER));
+      try {
+        this.escriu(out);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+  
+  /**
+   * Formata una durada en nanosegons com a mil·lisegons amb dos decimals.
+   */
+  private static String ms(long ns) {
+    final long centesimes = (ns + 5000) / 10000;
+    return (centesimes / 100) + "." + (centesimes % 100 < 10 ? "0" : "") + (centesimes % 100);
+  }
+  
+}
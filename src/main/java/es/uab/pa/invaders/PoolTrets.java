@@ -0,0 +1,163 @@
+/*
+ * @(#)PoolTrets.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Reserva (pool) de trets fora de joc, per reaprofitar-los en lloc de
+ * crear-ne de nous a cada dispar. La reserva té una capacitat màxima:
+ * els trets que hi sobren es deixen per al recol·lector de memòria.
+ * 
+ * No és segura entre fils: només l'ha de fer servir el fil del joc.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class PoolTrets {
+  
+  /**
+   * Trets disponibles per reaprofitar.
+   */
+  private final Tret[] lliures;
+  
+  /**
+   * Nombre de trets disponibles.
+   */
+  private int nLliures;
+  
+  /**
+   * Nombre de trets obtinguts de la reserva (reaprofitats).
+   */
+  private long encerts;
+  
+  /**
+   * Nombre de trets que s'han hagut de crear perquè la reserva
+   * estava buida.
+   */
+  private long fallades;
+  
+  /**
+   * Nombre de trets retornats que no hi cabien.
+   */
+  private long descartats;
+  
+  /**
+   * Crea una reserva buida amb la capacitat donada.
+   * 
+   * @param capacitat Nombre màxim de trets que es guarden.
+   */
+  public PoolTrets(int capacitat) {
+    this.lliures = new Tret[capacitat];
+  }
+  
+  /**
+   * Obté un tret a punt per afegir al joc, reaprofitant-ne un de la
+   * reserva si n'hi ha.
+   * 
+   * @param joc Joc en el que actuarà el tret.
+   * @param tipus Tipus del tret.
+   * @param x Coordenada "x" de la posició del tret.
+   * @param y Coordenada "y" de la posició del tret.
+   * @param vx Component "x" de la velocitat del tret.
+   * @param vy Component "y" de la velocitat del tret.
+   * @return tret inicialitzat amb els valors donats.
+   */
+  public Tret obte(Joc joc, int tipus, double x, double y, double vx, double vy) {
+    Tret t;
+    if (this.nLliures > 0) {
+      t = this.lliures[--this.nLliures];
+      this.lliures[this.nLliures] = null;
+      this.encerts++;
+    } else {
+      t = new Tret(joc, tipus);
+      this.fallades++;
+    }
+    t.reinicia(tipus, x, y, vx, vy);
+    return t;
+  }
+  
+  /**
+   * Retorna un tret que ha sortit del joc a la reserva.
+   * 
+   * @param t Tret a retornar.
+   */
+  public void retorna(Tret t) {
+    if (this.nLliures < this.lliures.length) {
+      this.lliures[this.nLliures++] = t;
+    } else {
+      this.descartats++;
+    }
+  }
+  
+  /**
+   * Retorna la capacitat de la reserva.
+   * 
+   * @return nombre màxim de trets que es guarden.
+   */
+  public int getCapacitat() {
+    return this.lliures.length;
+  }
+  
+  /**
+   * Retorna l'ocupació actual de la reserva.
+   * 
+   * @return nombre de trets disponibles per reaprofitar.
+   */
+  public int getLliures() {
+    return this.nLliures;
+  }
+  
+  /**
+   * Retorna quants trets s'han reaprofitat.
+   * 
+   * @return nombre de trets obtinguts de la reserva.
+   */
+  public long getEncerts() {
+    return this.encerts;
+  }
+  
+  /**
+   * Retorna quants trets s'han hagut de crear perquè la reserva
+   * estava buida.
+   * 
+   * @return nombre de fallades.
+   */
+  public long getFallades() {
+    return this.fallades;
+  }
+  
+  /**
+   * Retorna quants trets s'han descartat perquè la reserva era plena.
+   * 
+   * @return nombre de trets descartats.
+   */
+  public long getDescartats() {
+    return this.descartats;
+  }
+  
+}
@@ -0,0 +1,64 @@
+/*
+ * @(#)Renderitzador.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+/**
+ * Interfície que han d'implementar els objectes que mostren l'estat
+ * d'un joc. El joc no en necessita cap per funcionar: sense
+ * renderitzador, la simulació corre sense finestra.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public interface Renderitzador {
+  
+  /**
+   * S'invoca quan el joc s'ha inicialitzat, just abans del primer pas.
+   * 
+   * @param joc Joc que s'ha de mostrar.
+   */
+  public void inici(Joc joc);
+  
+  /**
+   * Redibuixa l'estat actual del joc.
+   * 
+   * @param joc Joc que s'ha de mostrar.
+   * @param alfa Fracció (entre 0 i 1) de pas transcorreguda des de
+   * l'últim pas de simulació, per interpolar la posició dels actors.
+   */
+  public void repinta(Joc joc, double alfa);
+  
+  /**
+   * Mostra el resultat del joc un cop s'ha acabat.
+   * 
+   * @param joc Joc que s'ha acabat.
+   */
+  public void fi(Joc joc);
+  
+}
@@ -0,0 +1,621 @@
+/*
+ * @(#)RenderitzadorFinestra.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferStrategy;
+
+import es.uab.pa.invaders.worldview.World;
+
+/**
+ * Renderitzador que mostra el joc en una <code>Finestra</code>, i que
+ * controla el jugador amb el teclat de la finestra.
+ * 
+ * Si la finestra té un <code>BufferStrategy</code> actiu, cada imatge
+ * es presenta directament des del thread del joc. Sinó, es dibuixa al
+ * buffer off-screen de la finestra i se li demana que es repinti.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class RenderitzadorFinestra implements Renderitzador {
+  
+  /**
+   * Mida (en píxels) de les rajoles en què es divideix el buffer
+   * off-screen per saber quines zones s'han de tornar a dibuixar.
+   */
+  public static int MIDA_RAJOLA = 32;
+  
+  /**
+   * Fracció del buffer off-screen a partir de la qual, en comptes de
+   * redibuixar només les zones que han canviat, es redibuixa tot.
+   */
+  public static double LLINDAR_REDIBUIX_COMPLET = 0.5;
+  
+  /**
+   * Finestra on es mostra el joc.
+   */
+  private Finestra finestra;
+  
+  /**
+   * Conversor mon-pantalla i pantalla-món
+   */
+  private World mon;
+  
+  /**
+   * Cache/Generador d'imatges.
+   */
+  private CacheImatges cacheImatges;
+  
+  /**
+   * Observador de teclat que controla el jugador del joc actual.
+   */
+  private KeyListener control;
+  
+  /**
+   * Posicions (interpolades) dels actors en coordenades món i pantalla,
+   * reaprofitades d'un repintat a l'altre.
+   */
+  private double[] xMon = new double[0], yMon = new double[0];
+  private int[] xPantalla = new int[0], yPantalla = new int[0];
+  
+  /**
+   * Actors a dibuixar, el seu sprite i el rectangle (x, y, amplada,
+   * alçada) que ocupen a la pantalla.
+   */
+  private Actor[] vistes = new Actor[0];
+  private int[] sprites = new int[0];
+  private int[] rectangles = new int[0];
+  
+  /**
+   * Atles d'on es treuen els sprites de la imatge actual.
+   */
+  private AtlasSprites atlas;
+  private int nActors;
+  
+  /**
+   * Actors i rectangles de l'última imatge dibuixada al buffer
+   * off-screen, per saber què ha canviat.
+   */
+  private Actor[] vistesAnteriors = new Actor[0];
+  private int[] rectanglesAnteriors = new int[0];
+  private int nAnteriors;
+  
+  /**
+   * Rectangle que ocupava el text de fps a l'última imatge.
+   */
+  private int xText, yText, ampleText, altText;
+  
+  /**
+   * Zones del buffer off-screen que s'han de tornar a dibuixar.
+   */
+  private final ZonesBrutes zones = new ZonesBrutes();
+  
+  /**
+   * Buffer off-screen on s'ha dibuixat l'última imatge.
+   */
+  private Image bufferAnterior;
+  
+  /**
+   * Atles amb el que s'ha dibuixat l'última imatge.
+   */
+  private AtlasSprites atlasAnterior;
+  
+  /**
+   * Indica si es mostra el perfil de cada fase (es commuta amb F3).
+   */
+  private volatile boolean mostraPerfil = false;
+  
+  /**
+   * Indica que el buffer off-screen s'ha de redibuixar sencer.
+   */
+  private volatile boolean redibuixaTot = true;
+  
+  /**
+   * Joc acabat que s'ha de tornar a presentar si la finestra ho demana
+   * (en mode actiu), o <code>null</code> si el joc encara corre.
+   */
+  private volatile Joc jocAcabat;
+  
+  /**
+   * Crea un nou renderitzador que dibuixa a la finestra donada.
+   * 
+   * @param f Finestra on s'ha de mostrar el joc.
+   */
+  public RenderitzadorFinestra(Finestra f) {
+    this.finestra = f;
+    this.mon = f.getMon();
+    this.cacheImatges = new CacheImatges(this.mon);
+  }
+
+  /**
+   * Connecta el teclat de la finestra amb el jugador del joc.
+   * 
+   * @param joc Joc que s'ha de mostrar.
+   */
+  public void inici(Joc joc) {
+    if (this.control != null) {
+      this.finestra.removeKeyListener(this.control);
+    }
+    this.jocAcabat = null;
+    this.redibuixaTot = true;
+    final Jugador jugador = joc.getJugador();
+    this.control = new KeyAdapter() {
+      
+      public void keyPressed(KeyEvent e) {
+        switch(e.getKeyCode()) {
+        case KeyEvent.VK_LEFT:  jugador.setEsquerra(true); break;
+        case KeyEvent.VK_RIGHT: jugador.setDreta(true); break;
+        case KeyEvent.VK_SPACE: jugador.fire(); break;
+        case KeyEvent.VK_F3:    mostraPerfil = !mostraPerfil; break;
+        default: return;
+        }
+      }
+      
+      public void keyReleased(KeyEvent e) {
+        switch(e.getKeyCode()) {
+        case KeyEvent.VK_LEFT:  jugador.setEsquerra(false); break;
+        case KeyEvent.VK_RIGHT: jugador.setDreta(false); break;
+        default: return;
+        }
+      }
+      
+    };
+    this.finestra.addKeyListener(this.control);
+  }
+
+  /**
+   * Redibuixa l'estat del joc i el presenta directament (mode actiu), o
+   * bé el dibuixa a la imatge que fa de <em>buffer offscreen</em> i demana
+   * a la finestra que es repinti (mode passiu).
+   * 
+   * @param joc Joc que s'ha de mostrar.
+   * @param alfa Fracció de pas per interpolar la posició dels actors.
+   */
+  public void repinta(Joc joc, double alfa) {
+    if (this.finestra.getBufferStrategyActiva() != null) {
+      this.presenta(joc, alfa, false);
+      return;
+    }
+    
+    Image buffer = finestra.getBuffer();
+    boolean complet = this.redibuixaTot;
+    this.redibuixaTot = false;
+    
+    // Joc i gui corren en threads diferents, així que hem
+    // de controlar l'accés al buffer.
+    synchronized(buffer) {
+      final Graphics g = buffer.getGraphics();
+      final int ample = buffer.getWidth(null), alt = buffer.getHeight(null);
+      this.posiciona(joc, alfa);
+      final String[] text = this.textos(joc);
+      
+      // Només redibuixem les zones on hi havia o hi ha actors que han
+      // canviat, si no són massa.
+      if (buffer != this.bufferAnterior || !this.zones.esDeMida(ample, alt, MIDA_RAJOLA)) {
+        this.zones.redimensiona(ample, alt, MIDA_RAJOLA);
+        complet = true;
+      }
+      if (this.atlas != this.atlasAnterior) {
+        // Han canviat els sprites (p.ex. s'ha acabat de generar l'atles
+        // per a la nova mida de la finestra)
+        complet = true;
+      }
+      if (!complet) {
+        this.zones.neteja();
+        this.marcaCanvis(g, text);
+        complet = this.zones.getFraccio() > LLINDAR_REDIBUIX_COMPLET;
+      }
+      if (complet) {
+        this.dibuixa(g, text, ample, alt);
+      } else {
+        this.dibuixaZones(g, text);
+      }
+      this.recorda(buffer, g, text);
+    }
+    
+    if (complet) {
+      this.finestra.repaint();
+    } else {
+      final int n = this.zones.calculaFranges();
+      final int[] f = this.zones.getFranges();
+      for (int k=0; k<n*4; k+=4) {
+        this.finestra.repaint(f[k], f[k+1], f[k+2], f[k+3]);
+      }
+    }
+  }
+  
+  /**
+   * Indica que el joc s'ha acabat i el seu resultat
+   * 
+   * @param joc Joc que s'ha acabat.
+   */
+  public void fi(Joc joc) {
+    if (this.finestra.getBufferStrategyActiva() != null) {
+      this.jocAcabat = joc;
+      this.presenta(joc, 1, true);
+      return;
+    }
+    
+    Image buffer = this.finestra.getBuffer();
+    synchronized(buffer) {
+      this.dibuixaFi((Graphics2D)buffer.getGraphics(), joc);
+    }
+    this.finestra.repaint();
+  }
+  
+  /**
+   * Torna a presentar l'última imatge del joc acabat, quan la finestra
+   * ho necessita (per exemple, perquè ha quedat tapada). Mentre el joc
+   * corre no cal fer res, perquè el mateix joc ja presenta cada imatge.
+   */
+  public void representa() {
+    final Joc joc = this.jocAcabat;
+    if (joc != null) {
+      this.presenta(joc, 1, true);
+    }
+  }
+  
+  /**
+   * Dibuixa i mostra una imatge a través del <code>BufferStrategy</code>
+   * de la finestra, repetint-la si el contingut dels buffers es perd
+   * o es restaura mentre s'hi dibuixa.
+   * 
+   * Només hi ha competència entre threads un cop acabat el joc, quan la
+   * finestra pot demanar que es torni a presentar.
+   * 
+   * @param joc Joc a mostrar.
+   * @param alfa Fracció de pas per interpolar la posició dels actors.
+   * @param acabat Si s'hi ha d'afegir el missatge de final del joc.
+   */
+  private synchronized void presenta(Joc joc, double alfa, boolean acabat) {
+    final BufferStrategy estrategia = this.finestra.getBufferStrategyActiva();
+    if (estrategia == null) {
+      return;
+    }
+    final int ample = this.mon.VXmax - this.mon.VXmin;
+    final int alt   = this.mon.VYmax - this.mon.VYmin;
+    this.posiciona(joc, alfa);
+    final String[] text = this.textos(joc);
+    do {
+      do {
+        final Graphics g = estrategia.getDrawGraphics();
+        try {
+          this.dibuixa(g, text, ample, alt);
+          if (acabat) {
+            this.dibuixaFi((Graphics2D)g, joc);
+          }
+        } finally {
+          g.dispose();
+        }
+      } while (estrategia.contentsRestored());
+      final long inici = joc.getPerfilador().inici();
+      estrategia.show();
+      Toolkit.getDefaultToolkit().sync();
+      joc.getPerfilador().registra(Perfilador.PRESENTACIO, inici);
+    } while (estrategia.contentsLost());
+  }
+  
+  /**
+   * Calcula la posició a la pantalla (interpolada), la imatge i el
+   * rectangle de cada actor del joc.
+   * 
+   * @param joc Joc a mostrar.
+   * @param alfa Fracció de pas per interpolar la posició dels actors.
+   */
+  private void posiciona(Joc joc, double alfa) {
+    final ActorStore store = joc.getStore();
+    final int n = store.size();
+    this.reserva(n);
+    for (int i=0; i<n; i++) {
+      final Actor a = store.get(i);
+      this.vistes[i] = a;
+      this.xMon[i] = a.getXInterpolada(alfa);
+      this.yMon[i] = a.getYInterpolada(alfa);
+    }
+    this.mon.worldToView(this.xMon, this.yMon, this.xPantalla, this.yPantalla, n);
+    final AtlasSprites atles = this.cacheImatges.getAtlas();
+    for (int i=0; i<n; i++) {
+      final int id = this.vistes[i].getIdSprite();
+      this.sprites[i] = id;
+      this.rectangles[i*4]   = this.xPantalla[i];
+      this.rectangles[i*4+1] = this.yPantalla[i];
+      this.rectangles[i*4+2] = atles.getAmplada(id);
+      this.rectangles[i*4+3] = atles.getAlcada(id);
+    }
+    this.atlas = atles;
+    this.nActors = n;
+  }
+  
+  /**
+   * Dibuixa el fons, tots els actors i el comptador de fps.
+   * 
+   * @param g Objecte graphics amb el que dibuixar.
+   * @param text Línies de text amb els fps i el perfil.
+   * @param ample Amplada de la superfície de dibuix.
+   * @param alt Alçada de la superfície de dibuix.
+   */
+  private void dibuixa(Graphics g, String[] text, int ample, int alt) {
+    g.setColor(Colors.FONS);
+    g.fillRect(0, 0, ample, alt);
+    
+    // Ho recorrem invers perquè surtin els trets a sobre tot
+    // lo altre
+    for(int i=this.nActors-1; i>=0; i--) {
+      this.atlas.dibuixa(g, this.sprites[i], this.xPantalla[i], this.yPantalla[i]);
+    }
+    
+    // Mostrar fps
+    g.setColor(Colors.JUGADOR_TRAS);
+    escriu(g, text);
+  }
+  
+  /**
+   * Marca com a brutes les zones on ha canviat alguna cosa respecte de
+   * l'última imatge: on eren els actors que han desaparegut o s'han
+   * mogut, on són els actors nous o moguts, i el text de fps.
+   * 
+   * Els actors que continuen en joc mantenen el seu ordre, i els nous
+   * s'afegeixen al final, de manera que n'hi ha prou d'avançar alhora
+   * per les dues llistes.
+   */
+  private void marcaCanvis(Graphics g, String[] text) {
+    int p = 0;
+    int c = 0;
+    for (; c<this.nActors; c++) {
+      final Actor a = this.vistes[c];
+      int q = p;
+      while (q < this.nAnteriors && this.vistesAnteriors[q] != a) {
+        q++;
+      }
+      if (q == this.nAnteriors) {
+        // A partir d'aquí només hi ha actors nous
+        break;
+      }
+      for (; p<q; p++) {
+        this.marcaAnterior(p);
+      }
+      final int b = c*4, ba = q*4;
+      if (this.rectangles[b]   != this.rectanglesAnteriors[ba]
+       || this.rectangles[b+1] != this.rectanglesAnteriors[ba+1]
+       || this.rectangles[b+2] != this.rectanglesAnteriors[ba+2]
+       || this.rectangles[b+3] != this.rectanglesAnteriors[ba+3]) {
+        this.marcaAnterior(q);
+        this.marcaActual(c);
+      }
+      p = q+1;
+    }
+    for (; c<this.nActors; c++) {
+      this.marcaActual(c);
+    }
+    for (; p<this.nAnteriors; p++) {
+      this.marcaAnterior(p);
+    }
+    
+    this.zones.marca(this.xText, this.yText, this.ampleText, this.altText);
+    final FontMetrics fm = g.getFontMetrics();
+    this.zones.marca(0, 50 - fm.getAscent(), ampleText(fm, text), text.length * fm.getHeight());
+  }
+  
+  /**
+   * Marca com a brut el rectangle de l'actor i a l'última imatge.
+   */
+  private void marcaAnterior(int i) {
+    final int b = i*4;
+    this.zones.marca(this.rectanglesAnteriors[b], this.rectanglesAnteriors[b+1],
+        this.rectanglesAnteriors[b+2], this.rectanglesAnteriors[b+3]);
+  }
+  
+  /**
+   * Marca com a brut el rectangle actual de l'actor i.
+   */
+  private void marcaActual(int i) {
+    final int b = i*4;
+    this.zones.marca(this.rectangles[b], this.rectangles[b+1],
+        this.rectangles[b+2], this.rectangles[b+3]);
+  }
+  
+  /**
+   * Torna a dibuixar només les zones brutes: primer el fons, i després
+   * (retallats a cada zona) els actors i el text que les toquen.
+   * 
+   * @param g Objecte graphics amb el que dibuixar.
+   * @param text Línies de text amb els fps i el perfil.
+   */
+  private void dibuixaZones(Graphics g, String[] text) {
+    final int n = this.zones.calculaFranges();
+    final int[] f = this.zones.getFranges();
+    g.setColor(Colors.FONS);
+    for (int k=0; k<n*4; k+=4) {
+      g.fillRect(f[k], f[k+1], f[k+2], f[k+3]);
+    }
+    
+    for (int i=this.nActors-1; i>=0; i--) {
+      final int b = i*4;
+      final int x = this.rectangles[b], y = this.rectangles[b+1];
+      final int w = this.rectangles[b+2], h = this.rectangles[b+3];
+      if (!this.zones.toca(x, y, w, h)) {
+        continue;
+      }
+      for (int k=0; k<n*4; k+=4) {
+        if (solapen(x, y, w, h, f[k], f[k+1], f[k+2], f[k+3])) {
+          g.setClip(f[k], f[k+1], f[k+2], f[k+3]);
+          this.atlas.dibuixa(g, this.sprites[i], x, y);
+        }
+      }
+    }
+    
+    g.setColor(Colors.JUGADOR_TRAS);
+    final FontMetrics fm = g.getFontMetrics();
+    final int yt = 50 - fm.getAscent(), wt = ampleText(fm, text), ht = text.length * fm.getHeight();
+    for (int k=0; k<n*4; k+=4) {
+      if (solapen(0, yt, wt, ht, f[k], f[k+1], f[k+2], f[k+3])) {
+        g.setClip(f[k], f[k+1], f[k+2], f[k+3]);
+        escriu(g, text);
+      }
+    }
+    g.setClip(null);
+  }
+  
+  /**
+   * Guarda els actors i rectangles de la imatge que s'acaba de dibuixar,
+   * per comparar-los amb els de la següent.
+   */
+  private void recorda(Image buffer, Graphics g, String[] text) {
+    final Actor[] va = this.vistesAnteriors;
+    this.vistesAnteriors = this.vistes;
+    this.vistes = va;
+    final int[] ra = this.rectanglesAnteriors;
+    this.rectanglesAnteriors = this.rectangles;
+    this.rectangles = ra;
+    this.nAnteriors = this.nActors;
+    this.reserva(this.nActors);
+    
+    final FontMetrics fm = g.getFontMetrics();
+    this.xText = 0;
+    this.yText = 50 - fm.getAscent();
+    this.ampleText = ampleText(fm, text);
+    this.altText = text.length * fm.getHeight();
+    this.bufferAnterior = buffer;
+    this.atlasAnterior = this.atlas;
+  }
+  
+  /**
+   * Indica si dos rectangles se solapen.
+   */
+  private static boolean solapen(int x1, int y1, int w1, int h1, int x2, int y2, int w2, int h2) {
+    return x1 < x2 + w2 && x2 < x1 + w1 && y1 < y2 + h2 && y2 < y1 + h1;
+  }
+  
+  /**
+   * Línies de text a mostrar: els fps i passos per segon mesurats del
+   * joc i, si s'ha demanat, el nombre d'actors i el perfil de cada fase.
+   */
+  private String[] textos(Joc joc) {
+    final String fps = (int)joc.getFps() + " fps, " + (int)joc.getPassosPerSegonMesurats() + " passos/s";
+    if (!this.mostraPerfil) {
+      return new String[] {fps};
+    }
+    
+    final ActorStore store = joc.getStore();
+    final Perfilador p = joc.getPerfilador();
+    final String[] text = new String[Perfilador.FASES + 2];
+    text[0] = fps;
+    text[1] = store.size() + " actors (" + store.compta(ActorStore.INVASOR) + " invasors, "
+        + store.compta(ActorStore.TRET) + " trets)";
+    for (int f=0; f<Perfilador.FASES; f++) {
+      text[f+2] = p.resum(f);
+    }
+    return text;
+  }
+  
+  /**
+   * Escriu les línies de text donades, una sota l'altra, a partir de la
+   * posició on sempre s'han mostrat els fps.
+   */
+  private static void escriu(Graphics g, String[] text) {
+    final int h = g.getFontMetrics().getHeight();
+    for (int l=0; l<text.length; l++) {
+      g.drawString(text[l], 0, 50 + l*h);
+    }
+  }
+  
+  /**
+   * Amplada de la línia de text més llarga.
+   */
+  private static int ampleText(FontMetrics fm, String[] text) {
+    int ample = 0;
+    for (int l=0; l<text.length; l++) {
+      ample = Math.max(ample, fm.stringWidth(text[l]));
+    }
+    return ample;
+  }
+  
+  /**
+   * Dibuixa la banda amb el resultat del joc.
+   * 
+   * @param g Objecte graphics amb el que dibuixar.
+   * @param joc Joc que s'ha acabat.
+   */
+  private void dibuixaFi(Graphics2D g, Joc joc) {
+    final double ratio = (mon.VXmax - mon.VXmin)/Joc.WIDTH;
+    g.setTransform(AffineTransform.getScaleInstance(ratio, ratio));
+    
+    g.setColor(Colors.BANDA);
+    g.fillRect(0, (int)(Joc.HEIGHT/2 - Joc.HEIGHT/20), (int)Joc.WIDTH, (int)(Joc.HEIGHT/9));
+    
+    g.setColor(Colors.JUGADOR_TRAS);
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    final String msg = (joc.getEstat() == Joc.JOC_GUANYAT) ? "guanyat!" : "perdut!";
+    g.setFont(g.getFont().deriveFont(Font.BOLD).deriveFont(50f));
+    g.drawString("Has " + msg, (int)(Joc.WIDTH/2 - 150), (int)(Joc.HEIGHT/2 + 10));
+    g.setFont(g.getFont().deriveFont(20f));
+    g.drawString("Prem -t- per tornar a començar", (int)(Joc.WIDTH/2 - 160), (int)(Joc.HEIGHT/2 + 40));
+  }
+
+  /**
+   * Assegura que els vectors de posicions tenen capacitat per a n actors.
+   */
+  private void reserva(int n) {
+    if (this.xMon.length < n) {
+      final int cap = Math.max(n, this.xMon.length*2);
+      this.xMon = new double[cap];
+      this.yMon = new double[cap];
+      this.xPantalla = new int[cap];
+      this.yPantalla = new int[cap];
+      this.sprites = new int[cap];
+    }
+    if (this.vistes.length < n) {
+      this.vistes = new Actor[Math.max(n, this.vistes.length*2)];
+    }
+    if (this.rectangles.length < n*4) {
+      this.rectangles = new int[Math.max(n*4, this.rectangles.length*2)];
+    }
+  }
+
+  /**
+   * Força el renderitzador a regenerar les imatges, utilitzat quan la
+   * finestra és redimensionada.
+   */
+  public void regeneraImatges() {
+    this.cacheImatges.regenera();
+    this.redibuixaTot = true;
+  }
+  
+}
@@ -0,0 +1,202 @@
+/*
+ * @(#)Reproductor.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reprodueix una partida enregistrada amb un <code>Enregistrador</code>:
+ * crea un joc amb la mateixa llavor i li torna a donar, pas a pas, les
+ * mateixes entrades del jugador. No cal cap finestra i els passos es fan
+ * tan ràpid com es pugui, de manera que serveix tant per reproduir un
+ * problema concret com per fer proves de càrrega amb partides reals.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Reproductor implements Closeable {
+  
+  /**
+   * Flux d'on es llegeix l'enregistrament.
+   */
+  private final DataInputStream in;
+  
+  /**
+   * Llavor i passos per segon del joc enregistrat.
+   */
+  private final long llavor;
+  private final int passosPerSegon;
+  
+  /**
+   * Entrada de la tongada actual, i quants passos en queden.
+   */
+  private int entrada;
+  private long passos;
+  
+  /**
+   * Indica si ja s'han llegit totes les tongades.
+   */
+  private boolean acabat;
+  
+  /**
+   * Crea un reproductor que llegeix l'enregistrament del flux donat.
+   * 
+   * @param in Flux amb l'enregistrament.
+   * @throws IOException si no es pot llegir o no és un enregistrament.
+   */
+  public Reproductor(InputStream in) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    if (this.in.readInt() != Enregistrador.IDENTIFICADOR) {
+      throw new IOException("No és un enregistrament de partida");
+    }
+    final int versio = this.in.readUnsignedByte();
+    if (versio != Enregistrador.VERSIO) {
+      throw new IOException("Versió d'enregistrament desconeguda: " + versio);
+    }
+    this.llavor = this.in.readLong();
+    this.passosPerSegon = (int)Enregistrador.llegeixVarint(this.in);
+  }
+  
+  /**
+   * Crea un reproductor que llegeix l'enregistrament del fitxer donat.
+   * 
+   * @param fitxer Fitxer amb l'enregistrament.
+   * @return reproductor nou.
+   * @throws IOException si no es pot llegir o no és un enregistrament.
+   */
+  public static Reproductor obre(String fitxer) throws IOException {
+    return new Reproductor(new FileInputStream(fitxer));
+  }
+  
+  /**
+   * Retorna la llavor del joc enregistrat.
+   * 
+   * @return llavor del joc.
+   */
+  public long getLlavor() {
+    return this.llavor;
+  }
+  
+  /**
+   * Retorna els passos per segon del joc enregistrat.
+   * 
+   * @return passos per segon.
+   */
+  public int getPassosPerSegon() {
+    return this.passosPerSegon;
+  }
+  
+  /**
+   * Crea i inicia un joc sense renderitzador igual que l'enregistrat.
+   * 
+   * @return joc a punt per reproduir.
+   */
+  public Joc creaJoc() {
+    final Joc joc = new Joc(this.llavor);
+    joc.setPassosPerSegon(this.passosPerSegon);
+    joc.inici();
+    return joc;
+  }
+  
+  /**
+   * Dona al jugador donat l'entrada del següent pas enregistrat.
+   * 
+   * @param j Jugador del joc (o <code>null</code> si ja no hi és).
+   * @return <code>false</code> si ja no queden passos enregistrats.
+   * @throws IOException si no es pot llegir l'enregistrament.
+   */
+  public boolean seguent(Jugador j) throws IOException {
+    while (this.passos == 0) {
+      if (this.acabat) {
+        return false;
+      }
+      this.llegeixTongada();
+    }
+    this.passos--;
+    if (j != null) {
+      j.esquerra = (this.entrada & Enregistrador.ESQUERRA) != 0;
+      j.dreta    = (this.entrada & Enregistrador.DRETA) != 0;
+      j.disparar = (this.entrada & Enregistrador.DISPARA) != 0;
+    }
+    return true;
+  }
+  
+  /**
+   * Fa avançar el joc donat tan ràpid com es pugui amb les entrades
+   * enregistrades, fins que s'acabin, s'acabi el joc o s'hagin fet el
+   * nombre de passos indicat.
+   * 
+   * @param joc Joc a fer avançar (creat amb <code>creaJoc</code>).
+   * @param maxPassos Nombre màxim de passos a executar.
+   * @return nombre de passos executats.
+   * @throws IOException si no es pot llegir l'enregistrament.
+   */
+  public long executa(Joc joc, long maxPassos) throws IOException {
+    long n = 0;
+    while (!joc.isAcabat() && n < maxPassos && this.seguent(joc.getJugador())) {
+      joc.pas();
+      n++;
+    }
+    return n;
+  }
+  
+  /**
+   * Tanca el flux de l'enregistrament.
+   * 
+   * @throws IOException si no es pot tancar.
+   */
+  public void close() throws IOException {
+    this.in.close();
+  }
+  
+  /**
+   * Llegeix la següent tongada. Un enregistrament tallat (per exemple,
+   * si el programa no va acabar bé) es dona per acabat on s'acaba.
+   */
+  private void llegeixTongada() throws IOException {
+    try {
+      this.passos = Enregistrador.llegeixVarint(this.in);
+      if (this.passos == 0) {
+        this.acabat = true;
+        return;
+      }
+      this.entrada = this.in.readUnsignedByte();
+    } catch (EOFException e) {
+      this.passos = 0;
+      this.acabat = true;
+    }
+  }
+  
+}
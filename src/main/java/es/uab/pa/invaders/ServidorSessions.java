@@ -0,0 +1,265 @@
+/*
+ * @(#)ServidorSessions.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor que allotja moltes partides sense finestra (sessions) alhora,
+ * sense dedicar un fil a cadascuna.
+ * 
+ * Les sessions esperen el seu següent pas en una cua ordenada per
+ * termini (<code>DelayQueue</code>). Un sol fil temporitzador en treu
+ * les que ja toquen i les envia a la reserva de fils compartida dels
+ * jocs (<code>Joc.getPool()</code>, amb <code>Joc.FILS</code> fils que
+ * es reparteixen la feina), on fan el pas i es tornen a programar.
+ * 
+ * Les sessions es guarden en un registre repartit en franges, cadascuna
+ * amb el seu propi bloqueig, perquè crear-ne i eliminar-ne des de molts
+ * fils alhora no es bloquegi tot en un sol punt.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class ServidorSessions {
+  
+  /**
+   * Nombre de franges per defecte del registre de sessions.
+   */
+  public static int FRANGES = 16;
+  
+  /**
+   * Franges del registre de sessions, segons l'identificador.
+   */
+  private final HashMap<Long, Sessio>[] franges;
+  
+  /**
+   * Identificador de la següent sessió.
+   */
+  private final AtomicLong seguentId = new AtomicLong();
+  
+  /**
+   * Nombre de sessions que s'han acabat soles (joc guanyat o perdut).
+   */
+  private final AtomicLong acabades = new AtomicLong();
+  
+  /**
+   * Sessions esperant el seu següent pas, ordenades per termini.
+   */
+  private final DelayQueue<Sessio> cua = new DelayQueue<Sessio>();
+  
+  /**
+   * Reserva de fils on es fan els passos.
+   */
+  private final ForkJoinPool pool;
+  
+  /**
+   * Fil que passa a la reserva les sessions a mesura que els toca.
+   */
+  private final Thread temporitzador;
+  
+  /**
+   * Indica si el servidor s'ha aturat.
+   */
+  private volatile boolean aturat;
+  
+  /**
+   * Crea un servidor buit, amb <code>FRANGES</code> franges, i n'engega
+   * el temporitzador.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ServidorSessions() {
+    this.franges = new HashMap[Math.max(1, FRANGES)];
+    for (int f=0; f<this.franges.length; f++) {
+      this.franges[f] = new HashMap<Long, Sessio>();
+    }
+    this.pool = Joc.getPool();
+    this.temporitzador = new Thread("Temporitzador de sessions") {
+      public void run() {
+        while (!aturat) {
+          try {
+            pool.execute(cua.take());
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    };
+    this.temporitzador.setDaemon(true);
+    this.temporitzador.start();
+  }
+  
+  /**
+   * Crea una sessió nova amb una llavor aleatòria i la posa en marxa.
+   * 
+   * @return sessió creada.
+   */
+  public Sessio crea() {
+    return this.crea(Aleatori.novaLlavor());
+  }
+  
+  /**
+   * Crea una sessió nova amb la llavor donada i la posa en marxa. El
+   * seu primer pas toca d'aquí a un període.
+   * 
+   * @param llavor Llavor del joc de la sessió.
+   * @return sessió creada.
+   */
+  public Sessio crea(long llavor) {
+    if (this.aturat) {
+      throw new IllegalStateException("El servidor està aturat");
+    }
+    final Joc joc = new Joc(llavor);
+    joc.inici();
+    final Sessio s = new Sessio(this.seguentId.getAndIncrement(), this, joc);
+    final HashMap<Long, Sessio> f = this.franja(s.getId());
+    synchronized (f) {
+      f.put(s.getId(), s);
+    }
+    this.programa(s);
+    return s;
+  }
+  
+  /**
+   * Retorna la sessió amb l'identificador donat.
+   * 
+   * @param id Identificador de la sessió.
+   * @return sessió, o <code>null</code> si no existeix (o ja s'ha
+   * eliminat o acabat).
+   */
+  public Sessio get(long id) {
+    final HashMap<Long, Sessio> f = this.franja(id);
+    synchronized (f) {
+      return f.get(id);
+    }
+  }
+  
+  /**
+   * Elimina la sessió amb l'identificador donat. Si té un pas
+   * programat, ja no es farà.
+   * 
+   * @param id Identificador de la sessió.
+   * @return <code>true</code> si la sessió existia.
+   */
+  public boolean elimina(long id) {
+    final HashMap<Long, Sessio> f = this.franja(id);
+    final Sessio s;
+    synchronized (f) {
+      s = f.remove(id);
+    }
+    if (s == null) {
+      return false;
+    }
+    s.elimina();
+    return true;
+  }
+  
+  /**
+   * Retorna el nombre de sessions en marxa.
+   * 
+   * @return nombre de sessions.
+   */
+  public int getNombreSessions() {
+    int n = 0;
+    for (HashMap<Long, Sessio> f : this.franges) {
+      synchronized (f) {
+        n += f.size();
+      }
+    }
+    return n;
+  }
+  
+  /**
+   * Retorna el nombre de sessions que s'han acabat soles perquè el seu
+   * joc s'ha guanyat o perdut.
+   * 
+   * @return nombre de sessions acabades.
+   */
+  public long getAcabades() {
+    return this.acabades.get();
+  }
+  
+  /**
+   * Retorna una còpia de la llista de sessions en marxa.
+   * 
+   * @return sessions en marxa.
+   */
+  public List<Sessio> getSessions() {
+    final List<Sessio> l = new ArrayList<Sessio>();
+    for (HashMap<Long, Sessio> f : this.franges) {
+      synchronized (f) {
+        l.addAll(f.values());
+      }
+    }
+    return l;
+  }
+  
+  /**
+   * Atura el servidor: elimina totes les sessions i el temporitzador.
+   */
+  public void atura() {
+    this.aturat = true;
+    this.temporitzador.interrupt();
+    for (Sessio s : this.getSessions()) {
+      this.elimina(s.getId());
+    }
+    this.cua.clear();
+  }
+  
+  /**
+   * Programa el següent pas de la sessió donada.
+   */
+  void programa(Sessio s) {
+    if (!this.aturat) {
+      this.cua.add(s);
+    }
+  }
+  
+  /**
+   * Treu del registre una sessió que s'ha acabat sola.
+   */
+  void acaba(Sessio s) {
+    if (this.elimina(s.getId())) {
+      this.acabades.incrementAndGet();
+    }
+  }
+  
+  /**
+   * Franja del registre on va la sessió amb l'identificador donat.
+   */
+  private HashMap<Long, Sessio> franja(long id) {
+    return this.franges[(int)(id % this.franges.length)];
+  }
+  
+}
@@ -0,0 +1,226 @@
+/*
+ * @(#)Sessio.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partida sense finestra allotjada en un <code>ServidorSessions</code>.
+ * La sessió no té fil propi: el temporitzador del servidor la posa a la
+ * reserva de fils quan li toca el següent pas, i en acabar-lo es torna
+ * a programar per al següent. Com que mai hi ha dos passos de la mateixa
+ * sessió a la cua alhora, el joc sempre avança des d'un sol fil (tot i
+ * que no sempre el mateix).
+ * 
+ * Per a cada pas es mesura el retard amb què s'ha començat respecte el
+ * moment en què tocava. Igual que <code>Joc.run</code>, si una sessió
+ * va endarrerida fa fins a <code>Joc.MAX_PASSOS_RECUPERACIO</code>
+ * passos seguits, i si ni així s'hi posa es salta la resta.
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class Sessio implements Runnable, Delayed {
+  
+  /**
+   * Identificador de la sessió dins el servidor.
+   */
+  private final long id;
+  
+  /**
+   * Servidor que allotja la sessió.
+   */
+  private final ServidorSessions servidor;
+  
+  /**
+   * Joc de la sessió.
+   */
+  private final Joc joc;
+  
+  /**
+   * Durada de cada pas, en nanosegons.
+   */
+  private final long periode;
+  
+  /**
+   * Instant (segons <code>System.nanoTime</code>) en què toca el
+   * següent pas.
+   */
+  private long termini;
+  
+  /**
+   * Retard amb què ha començat cada pas, en nanosegons.
+   */
+  private final Histograma retard = new Histograma();
+  
+  /**
+   * Nombre de passos fets i de passos que s'han saltat per
+   * no endarrerir-se més.
+   */
+  private volatile long passos, saltats;
+  
+  /**
+   * Indica que la sessió s'ha eliminat i no s'ha de tornar a programar.
+   */
+  private volatile boolean eliminada;
+  
+  /**
+   * Crea una sessió per al joc donat, que ja ha d'estar iniciat. El
+   * primer pas toca un període després d'ara.
+   * 
+   * @param id Identificador de la sessió.
+   * @param servidor Servidor que l'allotja.
+   * @param joc Joc de la sessió.
+   */
+  Sessio(long id, ServidorSessions servidor, Joc joc) {
+    this.id = id;
+    this.servidor = servidor;
+    this.joc = joc;
+    this.periode = 1000000000L / joc.getPassosPerSegon();
+    this.termini = System.nanoTime() + this.periode;
+  }
+  
+  /**
+   * Fa els passos que toquen (des d'un fil de la reserva) i torna a
+   * programar la sessió, o la treu del servidor si el joc s'ha acabat.
+   */
+  public void run() {
+    if (this.eliminada) {
+      return;
+    }
+    final long ara = System.nanoTime();
+    this.retard.registra(ara - this.termini);
+    
+    int n = 0;
+    try {
+      while (this.termini <= ara && !this.joc.isAcabat()) {
+        this.joc.pas();
+        this.termini += this.periode;
+        this.passos++;
+        if (++n >= this.joc.getMaxPassosRecuperacio()) {
+          break;
+        }
+      }
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+      this.servidor.elimina(this.id);
+      return;
+    }
+    if (this.termini <= ara) {
+      final long perduts = (ara - this.termini) / this.periode + 1;
+      this.termini += perduts * this.periode;
+      this.saltats += perduts;
+    }
+    
+    if (this.joc.isAcabat()) {
+      this.servidor.acaba(this);
+    } else if (!this.eliminada) {
+      this.servidor.programa(this);
+    }
+  }
+  
+  /**
+   * Retorna l'identificador de la sessió.
+   * 
+   * @return identificador.
+   */
+  public long getId() {
+    return this.id;
+  }
+  
+  /**
+   * Retorna el joc de la sessió. Des d'altres fils només s'hi han
+   * d'enviar ordres (per exemple, amb els mètodes de
+   * <code>Jugador</code>).
+   * 
+   * @return joc de la sessió.
+   */
+  public Joc getJoc() {
+    return this.joc;
+  }
+  
+  /**
+   * Retorna l'histograma del retard amb què ha començat cada pas, en
+   * nanosegons. Des d'altres fils les dades poden no ser del tot
+   * coherents.
+   * 
+   * @return histograma de retards.
+   */
+  public Histograma getRetard() {
+    return this.retard;
+  }
+  
+  /**
+   * Retorna el nombre de passos fets.
+   * 
+   * @return passos fets.
+   */
+  public long getPassos() {
+    return this.passos;
+  }
+  
+  /**
+   * Retorna el nombre de passos que s'han saltat per no endarrerir-se.
+   * 
+   * @return passos saltats.
+   */
+  public long getSaltats() {
+    return this.saltats;
+  }
+  
+  /**
+   * Indica si la sessió s'ha eliminat del servidor.
+   * 
+   * @return <code>true</code> si s'ha eliminat.
+   */
+  public boolean isEliminada() {
+    return this.eliminada;
+  }
+  
+  /**
+   * Marca la sessió com a eliminada: el pas que tingui programat ja no
+   * es farà.
+   */
+  void elimina() {
+    this.eliminada = true;
+  }
+  
+  public long getDelay(TimeUnit unit) {
+    return unit.convert(this.termini - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+  
+  public int compareTo(Delayed d) {
+    if (d instanceof Sessio) {
+      return Long.compare(this.termini, ((Sessio)d).termini);
+    }
+    return Long.compare(this.getDelay(TimeUnit.NANOSECONDS), d.getDelay(TimeUnit.NANOSECONDS));
+  }
+  
+}
@@ -29,8 +29,7 @@
 
 package es.uab.pa.invaders;
 
-import java.awt.geom.Area;
-import java.awt.geom.Rectangle2D;
+import es.uab.pa.invaders.worldview.WRectangle;
 
 /**
  * Classe que representa els trets del joc.
@@ -59,28 +58,38 @@ public class Tret extends Actor {
    */
   public static int TRET_INVASOR = 1;
   
-  /**
-   * Tipus d'aquest tret
-   */
-  private int tipus;
-  
   /**
    * Construeix un nou tret per al joc indicat.
    * 
    * @param joc Joc en el que actua aquest tret.
    */
   public Tret(Joc joc, int tipus) {
-    super(joc);
-    this.tipus = tipus;
+    super(joc, ActorStore.TRET, WIDTH, HEIGHT, capa(tipus), mascara(tipus));
   }
   
   /**
-   * Avança "un pas" el tret.
+   * Torna a posar en joc aquest tret (ús intern de <code>PoolTrets</code>).
+   * 
+   * @param tipus Nou tipus del tret.
+   * @param x Coordenada "x" de la nova posició.
+   * @param y Coordenada "y" de la nova posició.
+   * @param vx Component "x" de la nova velocitat.
+   * @param vy Component "y" de la nova velocitat.
    */
-  @Override public void moure() {
-    super.moure();
-    if (this.posicio.y >= Joc.HEIGHT || this.posicio.y <= 0) {
-      this.setPerEsborrar(true);
+  void reinicia(int tipus, double x, double y, double vx, double vy) {
+    super.reinicia(ActorStore.TRET, capa(tipus), mascara(tipus), x, y, vx, vy);
+  }
+  
+  /**
+   * Comportament d'un tret després d'integrar-ne la posició: desapareix
+   * en arribar a dalt o a baix de tot.
+   * 
+   * @param s Magatzem on es troba el tret.
+   * @param i Índex del tret dins el magatzem.
+   */
+  static void comportament(ActorStore s, int i) {
+    if (s.y[i] >= Joc.HEIGHT || s.y[i] <= 0) {
+      s.indicadors[i] |= ActorStore.PER_ESBORRAR;
     }
   }
   
@@ -90,18 +99,31 @@ public class Tret extends Actor {
    * @param a Actor amb el que s'ha produït la col·lisió.
    */
   public void colisiona(Actor a) {
-
-    // Els trets de jugador no el maten a ell mateix
-    if (this.tipus == TRET_JUGADOR && a instanceof Jugador) {
-      return;
-    }
-    // Ni els d'invasor a invasors
-    if (this.tipus == TRET_INVASOR && a instanceof Invasor) {
-      return;
-    }
-    
     this.setPerEsborrar(true);
   }
+  
+  /**
+   * Retorna la capa de col·lisió dels trets del tipus donat.
+   * 
+   * @param tipus Tipus de tret.
+   * @return <code>CAPA_TRET_JUGADOR</code> o <code>CAPA_TRET_INVASOR</code>.
+   */
+  static int capa(int tipus) {
+    return tipus == TRET_JUGADOR ? CAPA_TRET_JUGADOR : CAPA_TRET_INVASOR;
+  }
+  
+  /**
+   * Els trets només xoquen amb el bàndol contrari (actors i trets).
+   * 
+   * @param tipus Tipus de tret.
+   * @return màscara de capes amb les que pot col·lisionar un tret del
+   * tipus donat.
+   */
+  static int mascara(int tipus) {
+    return tipus == TRET_JUGADOR 
+        ? CAPA_INVASOR | CAPA_TRET_INVASOR
+        : CAPA_JUGADOR | CAPA_TRET_JUGADOR;
+  }
 
   /**
    * Retorna el nom de la imatge que representa
@@ -131,21 +153,13 @@ public class Tret extends Actor {
     return WIDTH;
   }
   
-  /**
-   * Retorna el perfil d'un tret en forma d'àrea, per realitzar
-   * la detecció de col·lisions.
-   */
-  public Area getCurrentArea() {
-    return new Area(new Rectangle2D.Double(posicio.x, posicio.y, WIDTH, HEIGHT));
-  }
-
   /**
    * Retorna el tipus d'aquest tret.
    * 
    * @return tipus d'aquest tret.
    */
   public int getTipus() {
-    return tipus;
+    return this.getCapa() == CAPA_TRET_JUGADOR ? TRET_JUGADOR : TRET_INVASOR;
   }
   
   /**
@@ -156,8 +170,7 @@ public class Tret extends Actor {
    * aquest jugador, <code>false</code> sinó.
    */
   public boolean hasColisio(Jugador jugador){
-    Area a = jugador.getArea();
-    return a.intersects(this.posicio.x, this.posicio.y, Tret.WIDTH, Tret.HEIGHT);
+    return jugador.intersectaRect(this.getX(), this.getY(), WIDTH, HEIGHT);
   }
   
   /**
@@ -168,8 +181,8 @@ public class Tret extends Actor {
    * aquest tret, <code>false</code> sinó.
    */
   public boolean hasColisio(Tret tret){
-    return this.tipus != tret.getTipus() 
-        && this.getBox().intersects(tret.getBox());
+    return WRectangle.intersects(this.getX(), this.getY(), WIDTH, HEIGHT,
+        tret.getX(), tret.getY(), WIDTH, HEIGHT);
   }
   
   /**
@@ -180,8 +193,70 @@ public class Tret extends Actor {
    * aquest invasor, <code>false</code> sinó.
    */
   public boolean hasColisio(Invasor invasor){
-    Area a = invasor.getArea();
-    return a.contains(this.posicio.x, this.posicio.y);
+    return Formes.elipseContePunt(invasor.getX(), invasor.getY(),
+        Invasor.WIDTH, Invasor.HEIGHT, this.getX(), this.getY());
+  }
+  
+  /**
+   * Delega el càlcul de l'instant d'impacte al mètode apropiat segons el
+   * tipus de l'actor donat.
+   */
+  double tempsImpacteTret(Actor a) {
+    if (a instanceof Invasor) {
+      return this.tempsImpacte((Invasor)a);
+    }
+    if (a instanceof Jugador) {
+      return this.tempsImpacte((Jugador)a);
+    }
+    if (a instanceof Tret) {
+      return this.tempsImpacte((Tret)a);
+    }
+    return Formes.SENSE_IMPACTE;
+  }
+  
+  /**
+   * Calcula en quin moment del darrer pas aquest tret ha tocat el
+   * jugador donat, seguint el recorregut de tots dos.
+   * 
+   * @param jugador jugador amb el que s'ha de comprovar si col·lisionem.
+   * @return fracció del pas en què s'ha produït la col·lisió, o
+   * <code>Formes.SENSE_IMPACTE</code>.
+   */
+  public double tempsImpacte(Jugador jugador) {
+    final double dx = (this.getX() - this.getXAnterior()) - (jugador.getX() - jugador.getXAnterior());
+    final double dy = (this.getY() - this.getYAnterior()) - (jugador.getY() - jugador.getYAnterior());
+    return jugador.tempsImpacteRect(this.getXAnterior(), this.getYAnterior(), WIDTH, HEIGHT, dx, dy);
+  }
+  
+  /**
+   * Calcula en quin moment del darrer pas aquest tret ha tocat el tret
+   * donat, seguint el recorregut de tots dos.
+   * 
+   * @param tret tret amb el que s'ha de comprovar si col·lisionem.
+   * @return fracció del pas en què s'ha produït la col·lisió, o
+   * <code>Formes.SENSE_IMPACTE</code>.
+   */
+  public double tempsImpacte(Tret tret) {
+    final double dx = (this.getX() - this.getXAnterior()) - (tret.getX() - tret.getXAnterior());
+    final double dy = (this.getY() - this.getYAnterior()) - (tret.getY() - tret.getYAnterior());
+    return Formes.tempsRectRect(this.getXAnterior(), this.getYAnterior(), WIDTH, HEIGHT, dx, dy,
+        tret.getXAnterior(), tret.getYAnterior(), WIDTH, HEIGHT);
+  }
+  
+  /**
+   * Calcula en quin moment del darrer pas aquest tret (el seu vèrtex
+   * superior esquerre) ha entrat a l'invasor donat, seguint el
+   * recorregut de tots dos.
+   * 
+   * @param invasor invasor amb el que s'ha de comprovar si col·lisionem.
+   * @return fracció del pas en què s'ha produït la col·lisió, o
+   * <code>Formes.SENSE_IMPACTE</code>.
+   */
+  public double tempsImpacte(Invasor invasor) {
+    final double dx = (this.getX() - this.getXAnterior()) - (invasor.getX() - invasor.getXAnterior());
+    final double dy = (this.getY() - this.getYAnterior()) - (invasor.getY() - invasor.getYAnterior());
+    return Formes.tempsPuntElipse(this.getXAnterior(), this.getYAnterior(), dx, dy,
+        invasor.getXAnterior(), invasor.getYAnterior(), Invasor.WIDTH, Invasor.HEIGHT);
   }
 
 }
@@ -0,0 +1,251 @@
+/*
+ * @(#)ZonesBrutes.java      1.0    2008/30/06
+ *  
+ * Copyright (c) 2008, Marc Pujol <marc@la3.org>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name Marc Pujol nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.uab.pa.invaders;
+
+import java.util.Arrays;
+
+/**
+ * Conjunt de zones "brutes" d'una imatge, que s'han de tornar a
+ * dibuixar. La imatge es divideix en rajoles quadrades; marcar un
+ * rectangle embruta totes les rajoles que toca, i la unió de rajoles
+ * brutes es pot recórrer com una llista de rectangles (franges
+ * horitzontals de rajoles, ajuntades verticalment quan coincideixen).
+ * 
+ * @author Marc Pujol <marc@la3.org>
+ */
+public class ZonesBrutes {
+  
+  /**
+   * Mida de la imatge, en píxels.
+   */
+  private int ample, alt;
+  
+  /**
+   * Mida del costat de les rajoles, en píxels.
+   */
+  private int midaRajola;
+  
+  /**
+   * Nombre de columnes i files de rajoles.
+   */
+  private int columnes, files;
+  
+  /**
+   * Rajoles brutes, per files.
+   */
+  private boolean[] brutes = new boolean[0];
+  
+  /**
+   * Nombre de rajoles brutes.
+   */
+  private int nBrutes;
+  
+  /**
+   * Rectangles (x, y, amplada, alçada) que cobreixen les rajoles brutes,
+   * calculats per <code>calculaFranges</code>.
+   */
+  private int[] franges = new int[64];
+  private int nFranges;
+  
+  /**
+   * Adapta les zones a una imatge de la mida donada, i les deixa netes.
+   * 
+   * @param ample Amplada de la imatge.
+   * @param alt Alçada de la imatge.
+   * @param midaRajola Mida del costat de les rajoles.
+   */
+  public void redimensiona(int ample, int alt, int midaRajola) {
+    this.ample = ample;
+    this.alt = alt;
+    this.midaRajola = Math.max(1, midaRajola);
+    this.columnes = (ample + this.midaRajola - 1) / this.midaRajola;
+    this.files = (alt + this.midaRajola - 1) / this.midaRajola;
+    if (this.brutes.length < this.columnes * this.files) {
+      this.brutes = new boolean[this.columnes * this.files];
+    }
+    this.neteja();
+  }
+  
+  /**
+   * Indica si les zones corresponen a una imatge de la mida donada.
+   * 
+   * @return <code>true</code> si la mida coincideix.
+   */
+  public boolean esDeMida(int ample, int alt, int midaRajola) {
+    return this.ample == ample && this.alt == alt && this.midaRajola == midaRajola;
+  }
+  
+  /**
+   * Deixa totes les rajoles netes.
+   */
+  public void neteja() {
+    Arrays.fill(this.brutes, false);
+    this.nBrutes = 0;
+    this.nFranges = 0;
+  }
+  
+  /**
+   * Embruta totes les rajoles que toca el rectangle donat.
+   */
+  public void marca(int x, int y, int amplada, int alcada) {
+    if (!this.dins(x, y, amplada, alcada)) {
+      return;
+    }
+    final int c0 = columna(x), c1 = columna(x + amplada - 1);
+    final int f0 = fila(y), f1 = fila(y + alcada - 1);
+    for (int f=f0; f<=f1; f++) {
+      for (int c=c0; c<=c1; c++) {
+        if (!this.brutes[f*this.columnes + c]) {
+          this.brutes[f*this.columnes + c] = true;
+          this.nBrutes++;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Indica si el rectangle donat toca alguna rajola bruta.
+   * 
+   * @return <code>true</code> si el rectangle toca alguna rajola bruta.
+   */
+  public boolean toca(int x, int y, int amplada, int alcada) {
+    if (!this.dins(x, y, amplada, alcada)) {
+      return false;
+    }
+    final int c0 = columna(x), c1 = columna(x + amplada - 1);
+    final int f0 = fila(y), f1 = fila(y + alcada - 1);
+    for (int f=f0; f<=f1; f++) {
+      for (int c=c0; c<=c1; c++) {
+        if (this.brutes[f*this.columnes + c]) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Retorna quina fracció de la imatge està bruta.
+   * 
+   * @return fracció (entre 0 i 1) de rajoles brutes.
+   */
+  public double getFraccio() {
+    final int total = this.columnes * this.files;
+    return total == 0 ? 0 : (double)this.nBrutes / total;
+  }
+  
+  /**
+   * Calcula els rectangles que cobreixen exactament les rajoles brutes
+   * (retallats a la mida de la imatge).
+   * 
+   * @return nombre de rectangles.
+   */
+  public int calculaFranges() {
+    this.nFranges = 0;
+    for (int f=0; f<this.files; f++) {
+      int c = 0;
+      while (c < this.columnes) {
+        if (!this.brutes[f*this.columnes + c]) {
+          c++;
+          continue;
+        }
+        final int c0 = c;
+        while (c < this.columnes && this.brutes[f*this.columnes + c]) {
+          c++;
+        }
+        this.afegeixFranja(c0, c, f);
+      }
+    }
+    return this.nFranges;
+  }
+  
+  /**
+   * Afegeix la franja de rajoles [c0, c1) de la fila f, allargant una
+   * franja que acabi a la fila anterior si en té exactament les mateixes
+   * columnes.
+   */
+  private void afegeixFranja(int c0, int c1, int f) {
+    final int x = c0 * this.midaRajola;
+    final int w = Math.min(c1 * this.midaRajola, this.ample) - x;
+    final int y = f * this.midaRajola;
+    final int h = Math.min(y + this.midaRajola, this.alt) - y;
+    for (int k=0; k<this.nFranges; k++) {
+      final int b = k*4;
+      if (this.franges[b] == x && this.franges[b+2] == w && this.franges[b+1] + this.franges[b+3] == y) {
+        this.franges[b+3] += h;
+        return;
+      }
+    }
+    if ((this.nFranges+1)*4 > this.franges.length) {
+      this.franges = Arrays.copyOf(this.franges, this.franges.length*2);
+    }
+    final int b = this.nFranges*4;
+    this.franges[b] = x;
+    this.franges[b+1] = y;
+    this.franges[b+2] = w;
+    this.franges[b+3] = h;
+    this.nFranges++;
+  }
+  
+  /**
+   * Retorna els rectangles calculats per <code>calculaFranges</code>,
+   * com a quàdruples (x, y, amplada, alçada) consecutives.
+   * 
+   * @return vector de rectangles (només són vàlids els primers).
+   */
+  public int[] getFranges() {
+    return this.franges;
+  }
+  
+  /**
+   * Indica si el rectangle donat no és buit i toca la imatge.
+   */
+  private boolean dins(int x, int y, int amplada, int alcada) {
+    return amplada > 0 && alcada > 0 && x < this.ample && y < this.alt
+        && x + amplada > 0 && y + alcada > 0;
+  }
+  
+  /**
+   * Columna de rajoles on cau la coordenada x (limitada a la imatge).
+   */
+  private int columna(int x) {
+    final int c = x < 0 ? 0 : x / this.midaRajola;
+    return c >= this.columnes ? this.columnes-1 : c;
+  }
+  
+  /**
+   * Fila de rajoles on cau la coordenada y (limitada a la imatge).
+   */
+  private int fila(int y) {
+    final int f = y < 0 ? 0 : y / this.midaRajola;
+    return f >= this.files ? this.files-1 : f;
+  }
+  
+}
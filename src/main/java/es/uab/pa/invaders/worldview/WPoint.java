@@ -90,8 +90,56 @@ public boolean compareTo(WPoint p)
  */
 public double distance(WPoint p)
 {
-	double d = Math.sqrt(Math.pow((p.x - this.x),2) + Math.pow((p.y - this.y),2));
-	return d;
+	return Math.sqrt(distanceSq(p.x,p.y));
+}
+
+/**
+ * Retorna el cuadrado de la distancia del WPoint actual a otro WPoint.
+ * Sirve para comparar distancias sin calcular raíces cuadradas.
+ * @param p El WPoint a calcular la distancia.
+ * @return La distancia al cuadrado entre ambos puntos.
+ */
+public double distanceSq(WPoint p)
+{
+	return distanceSq(p.x,p.y);
+}
+
+/**
+ * Retorna el cuadrado de la distancia del WPoint actual al punto (x1,y1).
+ * @param x1 La coordenada X del otro punto.
+ * @param y1 La coordenada Y del otro punto.
+ * @return La distancia al cuadrado entre ambos puntos.
+ */
+public double distanceSq(double x1,double y1)
+{
+	return distanceSq(x,y,x1,y1);
+}
+
+/**
+ * Retorna el cuadrado de la distancia entre los puntos (x1,y1) y (x2,y2).
+ * @param x1 La coordenada X del primer punto.
+ * @param y1 La coordenada Y del primer punto.
+ * @param x2 La coordenada X del segundo punto.
+ * @param y2 La coordenada Y del segundo punto.
+ * @return La distancia al cuadrado entre ambos puntos.
+ */
+public static double distanceSq(double x1,double y1,double x2,double y2)
+{
+	final double dx=x2-x1,dy=y2-y1;
+	return dx*dx+dy*dy;
+}
+
+/**
+ * Cambia las coordenadas del WPoint, para reaprovecharlo sin crear uno nuevo.
+ * @param x1 la coordenada X.
+ * @param y1 la coordenada Y.
+ * @return el propio WPoint.
+ */
+public WPoint set(double x1,double y1)
+{
+	x = x1;
+	y = y1;
+	return this;
 }
 
 /**
@@ -115,6 +163,17 @@ public void traslate(double x,double y) {
 	this.y+=y;
 }
 
+/**
+ * Como <code>virtualTraslate</code>, pero deja el resultado en un WPoint ya existente.
+ * @param x Desplazamiento de las X.
+ * @param y Desplazamiento de las Y.
+ * @param out El WPoint donde se guarda el resultado.
+ * @return <code>out</code>, trasladado.
+ */
+public WPoint virtualTraslate(double x,double y,WPoint out) {
+	return out.set(this.x+x,this.y+y);
+}
+
 /**
  * Crea un nuevo WPoint a partir del actual, trasladándolo según el desplazamiento marcado en los parámetros.
  * El desplazamiento a aplicar es la diferencia entre los puntos ref_ini y ref_final que se pasan como parámetros.
@@ -139,7 +198,8 @@ public WPoint traslateWithReference(WPoint ref_ini,WPoint ref_final) {
  */
 public Point toPoint(int numDecimals)
 {
-	return new Point((int)(x*Math.pow(10,numDecimals)),(int)(y*Math.pow(10,numDecimals)));
+	final double e=WRectangle.escala(numDecimals);
+	return new Point((int)(x*e),(int)(y*e));
 }
 
 
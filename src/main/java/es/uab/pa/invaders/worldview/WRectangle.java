@@ -30,6 +30,14 @@ public class WRectangle extends Object
 	 * La altura del WRectangle
 	 */
 	double al;
+
+	/**
+	 * Potencias de 10 ya calculadas, para no repetir Math.pow en cada conversión.
+	 */
+	private static final double[] POTENCIAS = new double[19];
+	static {
+		for (int i=0; i<POTENCIAS.length; i++) POTENCIAS[i] = Math.pow(10,i);
+	}
 	
 /**
  * Constructor por defecto. Inicializa a 0 las 4 variables miembro de WRectangle.
@@ -141,7 +149,8 @@ public WPoint centre() {
  * @return el nuevo Rectangle
  */
 public Rectangle toRectangle(int numDecimals) {
-	return new Rectangle((int)(x*Math.pow(10,numDecimals)),(int)(y*Math.pow(10,numDecimals)),(int)(amp*Math.pow(10,numDecimals)),(int)(al*Math.pow(10,numDecimals)));
+	final double e=escala(numDecimals);
+	return new Rectangle((int)(x*e),(int)(y*e),(int)(amp*e),(int)(al*e));
 }
 
 /**
@@ -150,7 +159,46 @@ public Rectangle toRectangle(int numDecimals) {
  * @return true o false, si intersectan o no.
  */
 public boolean intersects(WRectangle r) {
-	return toRectangle(World.DECIMALS).intersects(r.toRectangle(World.DECIMALS));
+	final double e=escala(World.DECIMALS);
+	int tw=(int)(amp*e),th=(int)(al*e),rw=(int)(r.amp*e),rh=(int)(r.al*e);
+	if (rw <= 0 || rh <= 0 || tw <= 0 || th <= 0) return false;
+	final int tx=(int)(x*e),ty=(int)(y*e),rx=(int)(r.x*e),ry=(int)(r.y*e);
+	// Mismas cuentas (y desbordamientos) que Rectangle.intersects, sin crear objetos
+	rw+=rx;rh+=ry;tw+=tx;th+=ty;
+	return ((rw < rx || rw > tx) && (rh < ry || rh > ty) && (tw < tx || tw > rx) && (th < ty || th > ry));
+}
+
+/**
+ * Verifica si el WRectangle intersecta con el rectángulo (x1,y1,amp1,al1).
+ * Trabaja directamente con <code>double</code>, sin redondear a World.DECIMALS ni crear objetos.
+ * @param x1 La coordenada X del otro rectángulo.
+ * @param y1 La coordenada Y del otro rectángulo.
+ * @param amp1 La anchura del otro rectángulo.
+ * @param al1 La altura del otro rectángulo.
+ * @return true o false, si intersectan o no.
+ */
+public boolean intersects(double x1,double y1,double amp1,double al1) {
+	return intersects(x,y,amp,al,x1,y1,amp1,al1);
+}
+
+/**
+ * Verifica si dos rectángulos, dados por sus coordenadas, se intersectan.
+ * Como <code>Rectangle.intersects</code>, los rectángulos vacíos no intersectan con nada
+ * y dos rectángulos que sólo se tocan por un lado tampoco.
+ * @param x1 La coordenada X del primer rectángulo.
+ * @param y1 La coordenada Y del primer rectángulo.
+ * @param amp1 La anchura del primer rectángulo.
+ * @param al1 La altura del primer rectángulo.
+ * @param x2 La coordenada X del segundo rectángulo.
+ * @param y2 La coordenada Y del segundo rectángulo.
+ * @param amp2 La anchura del segundo rectángulo.
+ * @param al2 La altura del segundo rectángulo.
+ * @return true o false, si intersectan o no.
+ */
+public static boolean intersects(double x1,double y1,double amp1,double al1,
+		double x2,double y2,double amp2,double al2) {
+	if (amp1 <= 0 || al1 <= 0 || amp2 <= 0 || al2 <= 0) return false;
+	return x1 < x2+amp2 && x2 < x1+amp1 && y1 < y2+al2 && y2 < y1+al1;
 }
 
 /**
@@ -159,7 +207,52 @@ public boolean intersects(WRectangle r) {
  * @return true o false (si lo contiene o no)
  */
 public boolean contains(WPoint p) {
-	return toRectangle(World.DECIMALS).contains(p.toPoint(World.DECIMALS));
+	final double e=escala(World.DECIMALS);
+	int w=(int)(amp*e),h=(int)(al*e);
+	if ((w | h) < 0) return false;
+	final int rx=(int)(x*e),ry=(int)(y*e),px=(int)(p.x*e),py=(int)(p.y*e);
+	// Mismas cuentas (y desbordamientos) que Rectangle.contains, sin crear objetos
+	if (px < rx || py < ry) return false;
+	w+=rx;h+=ry;
+	return ((w < rx || w > px) && (h < ry || h > py));
+}
+
+/**
+ * Examina si el WRectangle contiene el punto (px,py).
+ * Trabaja directamente con <code>double</code>, sin redondear a World.DECIMALS ni crear objetos.
+ * Como en <code>Rectangle</code>, el lado izquierdo y el superior forman parte del rectángulo,
+ * pero el derecho y el inferior no.
+ * @param px La coordenada X del punto.
+ * @param py La coordenada Y del punto.
+ * @return true o false (si lo contiene o no)
+ */
+public boolean contains(double px,double py) {
+	return contains(x,y,amp,al,px,py);
+}
+
+/**
+ * Examina si el rectángulo (x1,y1,amp1,al1) contiene el punto (px,py).
+ * @param x1 La coordenada X del rectángulo.
+ * @param y1 La coordenada Y del rectángulo.
+ * @param amp1 La anchura del rectángulo.
+ * @param al1 La altura del rectángulo.
+ * @param px La coordenada X del punto.
+ * @param py La coordenada Y del punto.
+ * @return true o false (si lo contiene o no)
+ */
+public static boolean contains(double x1,double y1,double amp1,double al1,double px,double py) {
+	if (amp1 < 0 || al1 < 0) return false;
+	return px >= x1 && py >= y1 && px < x1+amp1 && py < y1+al1;
+}
+
+/**
+ * Retorna 10^numDecimals, sacándolo de la tabla de potencias si es posible.
+ * @param numDecimals el número de decimales.
+ * @return 10 elevado a numDecimals.
+ */
+static double escala(int numDecimals) {
+	if (numDecimals >= 0 && numDecimals < POTENCIAS.length) return POTENCIAS[numDecimals];
+	return Math.pow(10,numDecimals);
 }
 
 /**
@@ -193,6 +286,63 @@ public void traslate(double x1,double y1) {
 	x+=x1;y+=y1;
 }
 
+/**
+ * Cambia las 4 variables miembro del WRectangle, para reaprovecharlo sin crear uno nuevo.
+ * @param x1 La coordenada X del punto superior izquierda.
+ * @param y1 La coordenada Y del punto superior izquierda.
+ * @param amp1 La anchura.
+ * @param al1 La altura.
+ * @return el propio WRectangle.
+ */
+public WRectangle set(double x1,double y1,double amp1,double al1) {
+	x=x1;y=y1;amp=amp1;al=al1;
+	return this;
+}
+
+/**
+ * Como <code>virtualTraslate</code>, pero deja el resultado en un WRectangle ya existente.
+ * No modifica el WRectangle con el que se está trabajando (a no ser que sea el mismo que <code>out</code>).
+ * @param x1 Desplazamiento de las X.
+ * @param y1 Desplazamiento de las Y.
+ * @param out El WRectangle donde se guarda el resultado.
+ * @return <code>out</code>, trasladado.
+ */
+public WRectangle virtualTraslate(double x1,double y1,WRectangle out) {
+	return out.set(x+x1,y+y1,amp,al);
+}
+
+/**
+ * Retorna la coordenada X del WRectangle.
+ * @return la coordenada X del punto superior izquierda.
+ */
+public double getX() {
+	return x;
+}
+
+/**
+ * Retorna la coordenada Y del WRectangle.
+ * @return la coordenada Y del punto superior izquierda.
+ */
+public double getY() {
+	return y;
+}
+
+/**
+ * Retorna la anchura del WRectangle.
+ * @return la anchura.
+ */
+public double getAmp() {
+	return amp;
+}
+
+/**
+ * Retorna la altura del WRectangle.
+ * @return la altura.
+ */
+public double getAl() {
+	return al;
+}
+
 //els 4 punts han d'haver estat creats
 /**
  * Retorna un WPolygon correspondiente a la rotación del WRectangle actual, un ángulo determinado y el centro de rotación es el centro del WRectangle.
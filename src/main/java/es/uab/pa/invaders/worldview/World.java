@@ -64,6 +64,12 @@ public	double WXmin;
 	 */
 	public static int DECIMALS=2;
 
+	/**
+	 * Términos de la transformada Mundo-Pantalla, precalculados por <code>updateTransform</code>:
+	 * <code>vx = (x-WXmin)*escalaX + VXmin</code> y <code>vy = (origenY + signoY*y)*escalaY + VYmin</code>.
+	 */
+	private double escalaX, escalaY, origenY, signoY;
+
 /**
  * Constructor por defecto. Sólo inicializa a 0 las coordenadas del Mundo.
  */
@@ -77,6 +83,7 @@ public World()
 	WYmax = 0.;//6000.;
 	WXmin = 0.;
 	WYmin = 0.;
+	updateTransform();
 
 }
 /**
@@ -94,8 +101,7 @@ public World(World m)
 	WYmax = m.WYmax;
 	WXmin = m.WXmin;
 	WYmin = m.WYmin;
-
-
+	updateTransform();
 
 }
 
@@ -116,6 +122,7 @@ public World (Point vmin, Point vmax, WPoint wmin,WPoint wmax) {
 	WYmin=wmin.y;
 	WXmax=wmax.x;
 	WYmax=wmax.y;
+	updateTransform();
 }
 	
 /**
@@ -141,7 +148,7 @@ public World( int nVXmax, int nVYmax, int nVXmin, int nVYmin,double nWXmax,doubl
 	WYmax = nWYmax;
 	WXmin = nWXmin;
 	WYmin = nWYmin;
-	
+	updateTransform();
 }
 
 //////////////////////////////////////////////////////////////////////
@@ -170,6 +177,19 @@ public WRectangle getWRectangleWorld() {
  */
 public void setYInverted(boolean b) {
 	Y_invertida=b;
+	updateTransform();
+}
+
+/**
+ * Recalcula los términos precalculados de la transformada Mundo-Pantalla.
+ * Los métodos set* ya lo llaman; sólo hace falta llamarlo a mano después de modificar
+ * directamente las variables públicas VXmin, WXmax, etc.
+ */
+public void updateTransform() {
+	escalaX = (VXmax-VXmin) / (WXmax-WXmin);
+	escalaY = (VYmax-VYmin) / (WYmax-WYmin);
+	origenY = Y_invertida ? 0 : WYmax;
+	signoY  = Y_invertida ? 1 : -1;
 }
 
 /**
@@ -197,7 +217,70 @@ public String toString() {
  * @return el punto transformado.
  */
 public Point worldToView(double x,double y) {
-	return worldToView(new WPoint(x,y));
+	return new Point(worldToViewX(x),worldToViewY(y));
+}
+
+/**
+ * Transforma la coordenada X de un punto de Mundo a Pantalla, sin crear ningún objeto.
+ * @param x La coordenada X del punto.
+ * @return la coordenada X en la Pantalla.
+ */
+public int worldToViewX(double x) {
+	return (int) ((x-WXmin) * escalaX + VXmin);
+}
+
+/**
+ * Transforma la coordenada Y de un punto de Mundo a Pantalla, sin crear ningún objeto.
+ * @param y La coordenada Y del punto.
+ * @return la coordenada Y en la Pantalla.
+ */
+public int worldToViewY(double y) {
+	return (int) ((origenY + signoY*y) * escalaY + VYmin);
+}
+
+/**
+ * Transforma de Mundo a Pantalla n coordenadas X de golpe, dejando el resultado en un vector ya existente.
+ * @param x Vector con las coordenadas X del Mundo.
+ * @param desdeX Posición de <code>x</code> donde empieza la primera coordenada.
+ * @param vx Vector donde se guardan las coordenadas X de la Pantalla.
+ * @param desdeVx Posición de <code>vx</code> donde se guarda la primera coordenada.
+ * @param n Número de coordenadas a transformar.
+ */
+public void worldToViewX(double[] x,int desdeX,int[] vx,int desdeVx,int n) {
+	final double wxmin=WXmin,ex=escalaX;
+	final int vxmin=VXmin;
+	for (int i=0;i<n;i++) {
+		vx[desdeVx+i] = (int) ((x[desdeX+i]-wxmin) * ex + vxmin);
+	}
+}
+
+/**
+ * Transforma de Mundo a Pantalla n coordenadas Y de golpe, dejando el resultado en un vector ya existente.
+ * @param y Vector con las coordenadas Y del Mundo.
+ * @param desdeY Posición de <code>y</code> donde empieza la primera coordenada.
+ * @param vy Vector donde se guardan las coordenadas Y de la Pantalla.
+ * @param desdeVy Posición de <code>vy</code> donde se guarda la primera coordenada.
+ * @param n Número de coordenadas a transformar.
+ */
+public void worldToViewY(double[] y,int desdeY,int[] vy,int desdeVy,int n) {
+	final double oy=origenY,sy=signoY,ey=escalaY;
+	final int vymin=VYmin;
+	for (int i=0;i<n;i++) {
+		vy[desdeVy+i] = (int) ((oy + sy*y[desdeY+i]) * ey + vymin);
+	}
+}
+
+/**
+ * Transforma de Mundo a Pantalla los n primeros puntos (x[i],y[i]), dejando el resultado en (vx[i],vy[i]).
+ * @param x Vector con las coordenadas X del Mundo.
+ * @param y Vector con las coordenadas Y del Mundo.
+ * @param vx Vector donde se guardan las coordenadas X de la Pantalla.
+ * @param vy Vector donde se guardan las coordenadas Y de la Pantalla.
+ * @param n Número de puntos a transformar.
+ */
+public void worldToView(double[] x,double[] y,int[] vx,int[] vy,int n) {
+	worldToViewX(x,0,vx,0,n);
+	worldToViewY(y,0,vy,0,n);
 }
 
 /**
@@ -207,15 +290,8 @@ public Point worldToView(double x,double y) {
  */
 public Point worldToView(WPoint Wp)
 {
-	double wy;
-	Point Vp=new Point();
-
-	wy=WYmax-Wp.y;	// El eje de coordenadas esta abajo en coord. mundo
-	if (Y_invertida) wy=Wp.y;
-
-	Vp.x = (int) ((Wp.x-WXmin) * ((VXmax-VXmin) / (WXmax-WXmin)) + VXmin);
-	Vp.y = (int) (wy * ((VYmax-VYmin) / (WYmax-WYmin)) + VYmin);
-	return Vp;
+	// El eje de coordenadas esta abajo en coord. mundo (si no es Y_invertida)
+	return new Point(worldToViewX(Wp.x),worldToViewY(Wp.y));
 }
 
 /**
@@ -278,14 +354,7 @@ public WRectangle viewToWorld(Rectangle rec1)
 public Polygon worldToView(WPolygon pol1)
 {
 	Polygon pol=pol1.toPolygon(0);
-	Point p;
-	WPoint wp=new WPoint(0,0);
-	for (int i=0;i<pol.npoints;i++) {
-		wp.x=pol1.x[i];wp.y=pol1.y[i];
-		p=worldToView(wp);
-		pol.xpoints[i]=p.x;
-  	pol.ypoints[i]=p.y;
-  }
+	worldToView(pol1.x,pol1.y,pol.xpoints,pol.ypoints,pol.npoints);
 	return pol;
 }
 
@@ -322,6 +391,7 @@ public void setDimensionWorld(double nWXmax,double nWYmax,double nWXmin,double n
 	WYmax = nWYmax;
 	WXmin = nWXmin;
 	WYmin = nWYmin;
+	updateTransform();
 }
 
 /**
@@ -337,6 +407,7 @@ public void setDimensionView( int nVXmax, int nVYmax, int nVXmin, int nVYmin)
 	VYmax = nVYmax;
 	VXmin = nVXmin;
 	VYmin = nVYmin;
+	updateTransform();
 }
 
 /**
@@ -350,6 +421,7 @@ public void setDimensionWorld(double max, double min)
 	WYmax = max;
 	WXmin = min;
 	WYmin = min;
+	updateTransform();
 }
 
 /**